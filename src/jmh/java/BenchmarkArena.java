@@ -0,0 +1,20 @@
+// Builds a HardMode sized for a benchmark: the play area grows with the target
+// count so spawn density, and therefore placement cost, stays like the real game
+class BenchmarkArena {
+    static final int BASE_WIDTH = 1000;
+    static final int BASE_HEIGHT = 600;
+    static final int BASE_TARGETS = 3;
+
+    final EventScheduler scheduler = new EventScheduler(1_000_000L, 1024, 64);
+    final HardMode mode;
+    final int width, height;
+
+    BenchmarkArena(int targetCount, boolean scaleArea) {
+        double scale = scaleArea ? Math.sqrt(Math.max(1.0, (double) targetCount / BASE_TARGETS)) : 1.0;
+        width = (int) (BASE_WIDTH * scale);
+        height = (int) (BASE_HEIGHT * scale);
+        int friends = Math.max(1, targetCount / 3);
+        mode = new HardMode(0, 0, width, height, friends, targetCount - friends, scheduler);
+        mode.start(0);
+    }
+}
@@ -0,0 +1,43 @@
+import benchmarks.Workload;
+
+import java.util.Random;
+
+// A click at a random point in the area, about half of them inside a target's bounds
+public class HitTestWorkload implements Workload {
+    private static final int POINTS = 1024;
+    private static final long COOLDOWN_STEP_NANOS = 1_000_000_000L;
+
+    private HardMode mode;
+    private final int[] clickX = new int[POINTS], clickY = new int[POINTS];
+    private int next;
+    private long gameTime;
+
+    @Override
+    public void setUp(int targetCount) {
+        BenchmarkArena arena = new BenchmarkArena(targetCount, true);
+        mode = arena.mode;
+        Random random = new Random(42);
+        for (int k = 0; k < POINTS; k++) {
+            if (k % 2 == 0) {
+                int i = random.nextInt(mode.targets.count);
+                clickX[k] = mode.targets.x[i] + random.nextInt(mode.playerWidth);
+                clickY[k] = mode.targets.y[i] + random.nextInt(mode.playerHeight);
+            } else {
+                clickX[k] = random.nextInt(arena.width);
+                clickY[k] = random.nextInt(arena.height);
+            }
+        }
+    }
+
+    @Override
+    public long run() {
+        int k = next;
+        next = (k + 1) & (POINTS - 1);
+        if (next == 0) {
+            // Move the clock past every click cooldown so each pass sees the same hits
+            gameTime += COOLDOWN_STEP_NANOS;
+            mode.update(gameTime);
+        }
+        return mode.checkPlayerClick(clickX[k], clickY[k]);
+    }
+}
@@ -0,0 +1,17 @@
+import benchmarks.Workload;
+
+// One 50 ms movement step over every target
+public class MovementWorkload implements Workload {
+    private HardMode mode;
+
+    @Override
+    public void setUp(int targetCount) {
+        mode = new BenchmarkArena(targetCount, true).mode;
+    }
+
+    @Override
+    public long run() {
+        mode.movePlayers();
+        return mode.targets.x[0];
+    }
+}
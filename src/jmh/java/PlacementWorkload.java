@@ -0,0 +1,23 @@
+import benchmarks.Workload;
+
+// Picks a fresh destination for one target, cycling through all of them
+public class PlacementWorkload implements Workload {
+    private HardMode mode;
+    private int next;
+
+    @Override
+    public void setUp(int targetCount) {
+        mode = new BenchmarkArena(targetCount, true).mode;
+    }
+
+    @Override
+    public long run() {
+        int i = next;
+        next = i + 1 == mode.targets.count ? 0 : i + 1;
+        if (next == 0) {
+            mode.movePlayers(); // restores the per-frame attempt budget
+        }
+        mode.setNewTarget(i);
+        return mode.targets.targetX[i];
+    }
+}
@@ -0,0 +1,37 @@
+import benchmarks.Workload;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+// A full repaint of the 1000x600 window, headless: background, every target and the score line
+public class RenderWorkload implements Workload {
+    private HardMode mode;
+    private BufferedImage frame;
+    private Graphics2D g;
+    private ImageCache.Sprite background;
+    private final Font font = new Font("Arial", Font.BOLD, 20);
+
+    @Override
+    public void setUp(int targetCount) {
+        mode = new BenchmarkArena(targetCount, false).mode;
+        frame = new BufferedImage(BenchmarkArena.BASE_WIDTH, BenchmarkArena.BASE_HEIGHT,
+                BufferedImage.TYPE_INT_RGB);
+        g = frame.createGraphics();
+        background = ImageCache.shared().sprite("/background.png", frame.getWidth(), frame.getHeight());
+    }
+
+    @Override
+    public long run() {
+        background.draw(g, 0, 0);
+        mode.render(g);
+        g.setFont(font);
+        g.setColor(Color.WHITE);
+        g.drawString("Points: 0", 10, 20);
+        return frame.getRGB(0, 0);
+    }
+
+    @Override
+    public void tearDown() {
+        g.dispose();
+    }
+}
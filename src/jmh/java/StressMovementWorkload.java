@@ -0,0 +1,23 @@
+import benchmarks.Workload;
+
+import java.util.concurrent.ForkJoinPool;
+
+// One 50 ms movement step over every target in stress mode, on the common pool
+public class StressMovementWorkload implements Workload {
+    private StressMode mode;
+
+    @Override
+    public void setUp(int targetCount) {
+        int friends = Math.max(1, targetCount / 3);
+        mode = new StressMode(0, 0, BenchmarkArena.BASE_WIDTH, BenchmarkArena.BASE_HEIGHT, friends,
+                targetCount - friends, new EventScheduler(1_000_000L, 1024, 64), new GameRandom(42L),
+                ForkJoinPool.commonPool());
+        mode.start(0);
+    }
+
+    @Override
+    public long run() {
+        mode.movePlayers();
+        return mode.targets.x[0];
+    }
+}
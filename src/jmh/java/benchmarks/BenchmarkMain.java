@@ -0,0 +1,20 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Same command line as the stock JMH main, but always attaches the GC profiler so
+// every run reports allocation rate (gc.alloc.rate.norm) next to the timings
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .jvmArgsAppend("-Djava.awt.headless=true")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,37 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmarks {
+    @Param({"MovementWorkload", "StressMovementWorkload", "HitTestWorkload", "PlacementWorkload", "RenderWorkload"})
+    public String workload;
+
+    @Param({"3", "100", "10000"})
+    public int targets;
+
+    private Workload instance;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        instance = (Workload) Class.forName(workload).getDeclaredConstructor().newInstance();
+        instance.setUp(targets);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        instance.tearDown();
+    }
+
+    @Benchmark
+    public long run() {
+        return instance.run();
+    }
+}
@@ -0,0 +1,14 @@
+package benchmarks;
+
+// The game classes live in the default package, which JMH cannot generate code
+// for. Each workload is a default-package class behind this interface, loaded by
+// name from GameBenchmarks.
+public interface Workload {
+    void setUp(int targetCount) throws Exception;
+
+    // One measured operation; the result is returned so the JIT can't discard the work
+    long run();
+
+    default void tearDown() {
+    }
+}
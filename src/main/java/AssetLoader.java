@@ -0,0 +1,48 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Decodes images and sounds on virtual threads, one per asset, so they load in parallel
+// with each other and with the window coming up. Whatever isn't ready when first used
+// is waited for, never decoded twice. Hard mode's assets are left out of the startup
+// set and prefetched once the menu is up, before anyone can pick hard mode.
+public class AssetLoader {
+    private final ImageCache imageCache;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicBoolean hardModePrefetched = new AtomicBoolean();
+
+    public AssetLoader(ImageCache imageCache) {
+        this.imageCache = imageCache;
+    }
+
+    public CompletableFuture<Void> loadImages(String... resources) {
+        CompletableFuture<?>[] images = new CompletableFuture<?>[resources.length];
+        for (int i = 0; i < resources.length; i++) {
+            images[i] = imageCache.decodeAsync(resources[i], executor);
+        }
+        return CompletableFuture.allOf(images);
+    }
+
+    // Only the first call does anything, so it is cheap to call every frame
+    public void prefetchHardMode() {
+        if (!hardModePrefetched.get() && hardModePrefetched.compareAndSet(false, true)) {
+            loadImages(HardMode.IMAGES)
+                    .thenRunAsync(() -> HardMode.prefetch(imageCache), executor)
+                    .exceptionally(error -> {
+                        error.printStackTrace(); // hard mode will load them itself
+                        return null;
+                    });
+        }
+    }
+
+    // For other loaders, e.g. the sound engine's
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,97 @@
+// Collects the screen rectangles that changed since the last frame. Once too many
+// rectangles pile up, or they cover too much of the screen, it degrades to a
+// single full-screen repaint, which is cheaper than many overlapping ones.
+public class DirtyRegion {
+    private static final int MAX_RECTS = 64;
+    private static final double FULL_REPAINT_FRACTION = 0.5;
+
+    private final int[] rects = new int[MAX_RECTS * 4]; // packed x, y, width, height
+    private int count;
+    private long area;
+    private boolean full;
+    private int width, height;
+
+    public void reset(int width, int height) {
+        this.width = width;
+        this.height = height;
+        count = 0;
+        area = 0;
+        full = false;
+    }
+
+    public void markFull() {
+        full = true;
+    }
+
+    public void add(int x, int y, int w, int h) {
+        if (full) {
+            return;
+        }
+        // Clip to the screen; off-screen damage costs nothing to skip
+        int x2 = Math.min(width, x + w), y2 = Math.min(height, y + h);
+        x = Math.max(0, x);
+        y = Math.max(0, y);
+        if (x2 <= x || y2 <= y) {
+            return;
+        }
+        if (count == MAX_RECTS) {
+            full = true;
+            return;
+        }
+        int base = count * 4;
+        rects[base] = x;
+        rects[base + 1] = y;
+        rects[base + 2] = x2 - x;
+        rects[base + 3] = y2 - y;
+        count++;
+        area += (long) (x2 - x) * (y2 - y);
+        if (area > FULL_REPAINT_FRACTION * width * height) {
+            full = true;
+        }
+    }
+
+    // Damage for a w x h box that moved from (x1, y1) to (x2, y2): one rectangle if the
+    // two positions overlap, otherwise two
+    public void addMove(int x1, int y1, int x2, int y2, int w, int h) {
+        if (Math.abs(x2 - x1) < w && Math.abs(y2 - y1) < h) {
+            int minX = Math.min(x1, x2), minY = Math.min(y1, y2);
+            add(minX, minY, Math.max(x1, x2) + w - minX, Math.max(y1, y2) + h - minY);
+        } else {
+            add(x1, y1, w, h);
+            add(x2, y2, w, h);
+        }
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public boolean isEmpty() {
+        return !full && count == 0;
+    }
+
+    public int size() {
+        return full ? 1 : count;
+    }
+
+    public int getX(int i) {
+        return full ? 0 : rects[i * 4];
+    }
+
+    public int getY(int i) {
+        return full ? 0 : rects[i * 4 + 1];
+    }
+
+    public int getWidth(int i) {
+        return full ? width : rects[i * 4 + 2];
+    }
+
+    public int getHeight(int i) {
+        return full ? height : rects[i * 4 + 3];
+    }
+
+    // Pixels that will be redrawn this frame
+    public long getArea() {
+        return full ? (long) width * height : area;
+    }
+}
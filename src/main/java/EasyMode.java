@@ -0,0 +1,196 @@
+import java.awt.*;
+import java.nio.ByteBuffer;
+
+// A single target that jumps to a new spot every 800 ms and briefly disappears
+// after being hit.
+public class EasyMode implements GameMode, EventScheduler.Handler {
+    private static final String PLAYER_IMAGE = "/player.png";
+    private static final double SCALE = 0.7;
+
+    private static final int EVENT_RESPAWN = 0;  // periodic respawn
+    private static final int EVENT_REAPPEAR = 1; // player shows up again after a respawn delay
+    private static final long RESPAWN_INTERVAL_NANOS = 800_000_000L;
+    private static final long RESPAWN_DELAY_NANOS = 800_000_000L;
+
+    private final EventScheduler scheduler;
+    private final GameRandom random;
+    private final int areaX, areaY, areaWidth, areaHeight;
+    private final ImageCache.Sprite playerSprite;
+    private final HitMask playerMask;
+    private final int playerWidth, playerHeight;
+    private int playerX, playerY;
+    private boolean playerVisible;
+    private long startTime; // mode time at which the current target appeared
+    private long nextRespawnTime;
+    private long reappearTime = NOT_PENDING;
+    private long gameTimeNanos;
+    private boolean restored; // state came from readState() rather than the constructor
+    private static final long NOT_PENDING = Long.MIN_VALUE;
+
+    // Where the player was when damage was last collected
+    private boolean drawnShown;
+    private int drawnX, drawnY;
+
+    public EasyMode(int areaX, int areaY, int areaWidth, int areaHeight, EventScheduler scheduler, GameRandom random) {
+        this.random = random;
+        this.areaX = areaX;
+        this.areaY = areaY;
+        this.areaWidth = areaWidth;
+        this.areaHeight = areaHeight;
+        this.scheduler = scheduler;
+
+        ImageCache imageCache = ImageCache.shared();
+        int width = Math.min(imageCache.decode(PLAYER_IMAGE).getWidth(), areaWidth);
+        int height = Math.min(imageCache.decode(PLAYER_IMAGE).getHeight(), areaHeight);
+        playerX = random.nextInt(Math.max(1, areaWidth - width)) + areaX;
+        playerY = random.nextInt(Math.max(1, areaHeight - height)) + areaY;
+        playerVisible = true;
+
+        playerWidth = (int) (width * SCALE);
+        playerHeight = (int) (height * SCALE);
+        playerSprite = imageCache.sprite(PLAYER_IMAGE, playerWidth, playerHeight);
+        playerMask = playerSprite.getHitMask();
+    }
+
+    @Override
+    public String getName() {
+        return "easy";
+    }
+
+    @Override
+    public void start(long gameTimeNanos) {
+        this.gameTimeNanos = gameTimeNanos;
+        if (!restored) {
+            startTime = gameTimeNanos;
+            nextRespawnTime = gameTimeNanos + RESPAWN_INTERVAL_NANOS;
+        }
+        scheduler.schedule(nextRespawnTime, this, EVENT_RESPAWN, 0);
+        if (reappearTime != NOT_PENDING) {
+            scheduler.schedule(reappearTime, this, EVENT_REAPPEAR, 0);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        scheduler.cancelAll(this);
+    }
+
+    @Override
+    public void update(long gameTimeNanos) {
+        this.gameTimeNanos = gameTimeNanos;
+    }
+
+    @Override
+    public void onEvent(int type, int arg, long gameTimeNanos) {
+        switch (type) {
+            case EVENT_RESPAWN -> {
+                // Schedule the next round first so it fires ahead of this round's reappearance
+                nextRespawnTime += RESPAWN_INTERVAL_NANOS;
+                scheduler.schedule(nextRespawnTime, this, EVENT_RESPAWN, 0);
+                this.gameTimeNanos = gameTimeNanos;
+                respawnPlayer();
+            }
+            case EVENT_REAPPEAR -> {
+                reappearTime = NOT_PENDING;
+                playerX = random.nextInt(Math.max(1, areaWidth - playerWidth)) + areaX;
+                playerY = random.nextInt(Math.max(1, areaHeight - playerHeight)) + areaY;
+                playerVisible = true;
+                startTime = gameTimeNanos;
+            }
+        }
+    }
+
+    private void respawnPlayer() {
+        GameEvents.Respawn event = GameEvents.beginRespawn();
+        playerVisible = false;
+        reappearTime = gameTimeNanos + RESPAWN_DELAY_NANOS;
+        scheduler.schedule(reappearTime, this, EVENT_REAPPEAR, 0);
+        if (event != null && event.shouldCommit()) {
+            event.mode = getName();
+            event.targets = 1;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void render(Graphics g) {
+        if (playerVisible) {
+            playerSprite.draw(g, playerX, playerY);
+        }
+    }
+
+    @Override
+    public void collectDamage(DirtyRegion region) {
+        if (playerVisible != drawnShown || (playerVisible && (playerX != drawnX || playerY != drawnY))) {
+            if (drawnShown) {
+                region.add(drawnX, drawnY, playerWidth, playerHeight);
+            }
+            if (playerVisible) {
+                region.add(playerX, playerY, playerWidth, playerHeight);
+            }
+            drawnShown = playerVisible;
+            drawnX = playerX;
+            drawnY = playerY;
+        }
+    }
+
+    // Only the visible pixels of the target count, not its transparent corners
+    @Override
+    public int onClick(int x, int y) {
+        if (playerVisible && playerMask.contains(x - playerX, y - playerY)) {
+            respawnPlayer(); // Respawn the player after a hit
+            return 1;
+        }
+        return MISS;
+    }
+
+    @Override
+    public long getRoundStartTime() {
+        return startTime;
+    }
+
+    @Override
+    public int getStateSize() {
+        return 8 + 4 + 4 + 1 + 8 + 8 + 8;
+    }
+
+    @Override
+    public void writeState(ByteBuffer out, long now) {
+        out.putLong(random.getState());
+        out.putInt(playerX);
+        out.putInt(playerY);
+        out.put((byte) (playerVisible ? 1 : 0));
+        out.putLong(startTime - now);
+        out.putLong(nextRespawnTime - now);
+        out.putLong(reappearTime == NOT_PENDING ? NOT_PENDING : reappearTime - now);
+    }
+
+    @Override
+    public void readState(ByteBuffer in, long now) {
+        random.setState(in.getLong());
+        playerX = in.getInt();
+        playerY = in.getInt();
+        playerVisible = in.get() != 0;
+        startTime = now + in.getLong();
+        nextRespawnTime = now + in.getLong();
+        long reappearIn = in.getLong();
+        reappearTime = reappearIn == NOT_PENDING ? NOT_PENDING : now + reappearIn;
+        restored = true;
+    }
+
+    public int getPlayerX() {
+        return playerX;
+    }
+
+    public int getPlayerY() {
+        return playerY;
+    }
+
+    public int getPlayerWidth() {
+        return playerWidth;
+    }
+
+    public int getPlayerHeight() {
+        return playerHeight;
+    }
+}
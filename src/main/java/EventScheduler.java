@@ -0,0 +1,184 @@
+import java.util.Arrays;
+
+// Hashed timing wheel on the game clock. Events live in preallocated parallel
+// arrays with a free list, so scheduling and cancelling are O(1) and allocate
+// nothing once the pool has grown to the working set. Events due on the same
+// tick fire in the order they were scheduled.
+public class EventScheduler {
+    public interface Handler {
+        void onEvent(int type, int arg, long gameTimeNanos);
+    }
+
+    public static final long NO_EVENT = -1;
+    private static final int NONE = -1;
+
+    private final long resolutionNanos;
+    private final int mask;
+    private final int[] slotHead, slotTail;
+    private long currentTick; // last tick whose slot has been processed
+
+    private long[] deadlineTick;
+    private int[] type, arg, generation, next, prev, slotOf;
+    private Handler[] handler;
+    private int freeHead = NONE;
+    private int pending;
+
+    // slots is rounded up to a power of two; events further out than one turn of the
+    // wheel simply wait in their slot for later rounds
+    public EventScheduler(long resolutionNanos, int slots, int capacity) {
+        this.resolutionNanos = resolutionNanos;
+        int size = Integer.highestOneBit(Math.max(2, slots - 1)) << 1;
+        mask = size - 1;
+        slotHead = new int[size];
+        slotTail = new int[size];
+        Arrays.fill(slotHead, NONE);
+        Arrays.fill(slotTail, NONE);
+        deadlineTick = new long[0];
+        type = new int[0];
+        arg = new int[0];
+        generation = new int[0];
+        next = new int[0];
+        prev = new int[0];
+        slotOf = new int[0];
+        handler = new Handler[0];
+        grow(Math.max(16, capacity));
+    }
+
+    private void grow(int capacity) {
+        int old = type.length;
+        deadlineTick = Arrays.copyOf(deadlineTick, capacity);
+        type = Arrays.copyOf(type, capacity);
+        arg = Arrays.copyOf(arg, capacity);
+        generation = Arrays.copyOf(generation, capacity);
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        slotOf = Arrays.copyOf(slotOf, capacity);
+        handler = Arrays.copyOf(handler, capacity);
+        for (int i = capacity - 1; i >= old; i--) {
+            slotOf[i] = NONE;
+            next[i] = freeHead;
+            freeHead = i;
+        }
+    }
+
+    // Returns a handle for cancel(). Deadlines at or before the current tick fire on the next advance.
+    public long schedule(long deadlineNanos, Handler target, int eventType, int eventArg) {
+        if (freeHead == NONE) {
+            grow(type.length * 2);
+        }
+        int e = freeHead;
+        freeHead = next[e];
+
+        long tick = Math.max(currentTick + 1, Math.ceilDiv(deadlineNanos, resolutionNanos));
+        deadlineTick[e] = tick;
+        type[e] = eventType;
+        arg[e] = eventArg;
+        handler[e] = target;
+
+        int slot = (int) (tick & mask);
+        slotOf[e] = slot;
+        next[e] = NONE;
+        prev[e] = slotTail[slot];
+        if (slotTail[slot] != NONE) {
+            next[slotTail[slot]] = e;
+        } else {
+            slotHead[slot] = e;
+        }
+        slotTail[slot] = e;
+        pending++;
+        return ((long) generation[e] << 32) | e;
+    }
+
+    public boolean cancel(long handle) {
+        if (handle == NO_EVENT) {
+            return false;
+        }
+        int e = (int) handle;
+        if (e < 0 || e >= type.length || generation[e] != (int) (handle >>> 32) || slotOf[e] == NONE) {
+            return false; // already fired or cancelled
+        }
+        release(e);
+        return true;
+    }
+
+    // Cancels every pending event owned by the handler, e.g. when a game mode is torn down
+    public void cancelAll(Handler target) {
+        for (int e = 0; e < type.length; e++) {
+            if (slotOf[e] != NONE && handler[e] == target) {
+                release(e);
+            }
+        }
+    }
+
+    private void release(int e) {
+        int slot = slotOf[e];
+        if (prev[e] != NONE) {
+            next[prev[e]] = next[e];
+        } else {
+            slotHead[slot] = next[e];
+        }
+        if (next[e] != NONE) {
+            prev[next[e]] = prev[e];
+        } else {
+            slotTail[slot] = prev[e];
+        }
+        slotOf[e] = NONE;
+        handler[e] = null;
+        generation[e]++;
+        next[e] = freeHead;
+        freeHead = e;
+        pending--;
+    }
+
+    // Moves the wheel to the given time, backwards or forwards; only valid with nothing pending
+    public void reset(long gameTimeNanos) {
+        if (pending != 0) {
+            throw new IllegalStateException(pending + " events still pending");
+        }
+        currentTick = Math.floorDiv(gameTimeNanos, resolutionNanos);
+    }
+
+    // Fires every event due at or before the given game time
+    public void advance(long gameTimeNanos) {
+        long targetTick = Math.floorDiv(gameTimeNanos, resolutionNanos);
+        if (targetTick - currentTick > mask) {
+            // Fell more than a full turn behind: one sweep of every slot catches up
+            for (int slot = 0; slot <= mask; slot++) {
+                fireDue(slot, targetTick, gameTimeNanos);
+            }
+            currentTick = targetTick;
+            return;
+        }
+        while (currentTick < targetTick) {
+            currentTick++;
+            fireDue((int) (currentTick & mask), currentTick, gameTimeNanos);
+        }
+    }
+
+    private void fireDue(int slot, long limitTick, long gameTimeNanos) {
+        int e = slotHead[slot];
+        while (e != NONE) {
+            int following = next[e];
+            int followingGeneration = following != NONE ? generation[following] : 0;
+            if (deadlineTick[e] <= limitTick) {
+                Handler target = handler[e];
+                int eventType = type[e], eventArg = arg[e];
+                release(e);
+                target.onEvent(eventType, eventArg, gameTimeNanos);
+                // The handler may have cancelled the next event; if so, rescan this slot
+                if (following != NONE && (generation[following] != followingGeneration || slotOf[following] != slot)) {
+                    following = slotHead[slot];
+                }
+            }
+            e = following;
+        }
+    }
+
+    public int getPendingCount() {
+        return pending;
+    }
+
+    public int getCapacity() {
+        return type.length;
+    }
+}
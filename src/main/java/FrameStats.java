@@ -0,0 +1,82 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-frame timing collected by the game loop: simulation step and render
+// durations, frame-to-frame intervals, dropped frames, and the delay between a
+// click and the first frame presented after it.
+public class FrameStats {
+    public final LatencyHistogram update = new LatencyHistogram();
+    public final LatencyHistogram render = new LatencyHistogram();
+    public final LatencyHistogram frameInterval = new LatencyHistogram();
+    public final LatencyHistogram inputLatency = new LatencyHistogram();
+
+    private final long droppedThresholdNanos;
+    private long droppedFrames;
+    private volatile long lastFrameAllocation;
+    private long allocatedBytes;
+    private long allocationFrames;
+    private final AtomicLong pendingInput = new AtomicLong(); // nanoTime of the oldest unrendered click
+
+    // A frame counts as dropped when it took longer than 1.5 target frame periods
+    public FrameStats(long targetFrameNanos) {
+        this.droppedThresholdNanos = targetFrameNanos > 0 ? targetFrameNanos * 3 / 2 : Long.MAX_VALUE;
+    }
+
+    void recordFrameInterval(long nanos) {
+        frameInterval.record(nanos);
+        if (nanos > droppedThresholdNanos) {
+            droppedFrames++;
+        }
+    }
+
+    // Called from the input thread when an input event arrives
+    public void markInput(long nanoTime) {
+        pendingInput.compareAndSet(0, nanoTime);
+    }
+
+    // Called by the loop once a frame is on screen
+    void framePresented(long nanoTime) {
+        long input = pendingInput.getAndSet(0);
+        if (input != 0) {
+            inputLatency.record(nanoTime - input);
+        }
+    }
+
+    // Bytes the loop thread allocated during one frame, updates and render together
+    void recordAllocation(long bytes) {
+        lastFrameAllocation = bytes;
+        allocatedBytes += bytes;
+        allocationFrames++;
+    }
+
+    public long getLastFrameAllocation() {
+        return lastFrameAllocation;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public void writeReport(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("metric,count,p50_ms,p95_ms,p99_ms,max_ms");
+            writeRow(out, "update", update);
+            writeRow(out, "render", render);
+            writeRow(out, "frame_interval", frameInterval);
+            writeRow(out, "input_latency", inputLatency);
+            out.println("dropped_frames," + droppedFrames);
+            if (allocationFrames > 0) {
+                out.println("allocated_bytes_per_frame," + allocatedBytes / allocationFrames);
+            }
+        }
+    }
+
+    private static void writeRow(PrintWriter out, String name, LatencyHistogram histogram) {
+        out.printf("%s,%d,%.3f,%.3f,%.3f,%.3f%n", name, histogram.getCount(),
+                histogram.getPercentile(50) / 1e6, histogram.getPercentile(95) / 1e6,
+                histogram.getPercentile(99) / 1e6, histogram.getMax() / 1e6);
+    }
+}
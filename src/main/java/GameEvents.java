@@ -0,0 +1,246 @@
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+// Flight recorder events for the hot paths, listed under "Target Practice" in JDK
+// Mission Control, so a reported hitch can be lined up with GC, JIT and I/O events.
+// They are meant to stay in. The begin methods return null unless a recording wants
+// the event, so with none running a path pays a flag check or two and allocates
+// nothing, even before the JIT has compiled it; none of the events take a stack trace.
+//
+// Record a session with -Dtargetpractice.jfr=<file>, or any recording started
+// with -XX:StartFlightRecording.
+public final class GameEvents {
+    private static final String CATEGORY = "Target Practice";
+
+    // Only ever asked isEnabled(), which is per event type. Loading the first event class
+    // starts the recorder's machinery, a few hundred ms, so nothing here is touched until
+    // a recording has started it anyway (this flag, -XX:StartFlightRecording or jcmd).
+    private static final class Probes {
+        static final Update UPDATE = new Update();
+        static final Render RENDER = new Render();
+        static final Click CLICK = new Click();
+        static final Placement PLACEMENT = new Placement();
+        static final Saturated SATURATED = new Saturated();
+        static final Respawn RESPAWN = new Respawn();
+        static final Save SAVE = new Save();
+        static final Load LOAD = new Load();
+    }
+
+    private GameEvents() {
+    }
+
+    static Update beginUpdate() {
+        if (!FlightRecorder.isInitialized() || !Probes.UPDATE.isEnabled()) {
+            return null;
+        }
+        Update event = new Update();
+        event.begin();
+        return event;
+    }
+
+    static Render beginRender() {
+        if (!FlightRecorder.isInitialized() || !Probes.RENDER.isEnabled()) {
+            return null;
+        }
+        Render event = new Render();
+        event.begin();
+        return event;
+    }
+
+    static Click beginClick() {
+        if (!FlightRecorder.isInitialized() || !Probes.CLICK.isEnabled()) {
+            return null;
+        }
+        Click event = new Click();
+        event.begin();
+        return event;
+    }
+
+    static Placement beginPlacement() {
+        if (!FlightRecorder.isInitialized() || !Probes.PLACEMENT.isEnabled()) {
+            return null;
+        }
+        Placement event = new Placement();
+        event.begin();
+        return event;
+    }
+
+    // An instant event: there is nothing to time, only the moment it happened
+    static Saturated beginSaturated() {
+        if (!FlightRecorder.isInitialized() || !Probes.SATURATED.isEnabled()) {
+            return null;
+        }
+        return new Saturated();
+    }
+
+    static Respawn beginRespawn() {
+        if (!FlightRecorder.isInitialized() || !Probes.RESPAWN.isEnabled()) {
+            return null;
+        }
+        Respawn event = new Respawn();
+        event.begin();
+        return event;
+    }
+
+    static Save beginSave() {
+        if (!FlightRecorder.isInitialized() || !Probes.SAVE.isEnabled()) {
+            return null;
+        }
+        Save event = new Save();
+        event.begin();
+        return event;
+    }
+
+    static Load beginLoad() {
+        if (!FlightRecorder.isInitialized() || !Probes.LOAD.isEnabled()) {
+            return null;
+        }
+        Load event = new Load();
+        event.begin();
+        return event;
+    }
+
+    @Name("targetpractice.Update")
+    @Label("Game Update")
+    @Description("One fixed simulation step on the game loop")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Update extends Event {
+        @Label("Tick")
+        public long tick;
+    }
+
+    @Name("targetpractice.Render")
+    @Label("Frame Render")
+    @Description("Drawing and presenting one frame, after the frame's updates")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Render extends Event {
+        @Label("Tick")
+        public long tick;
+
+        @Label("Updates")
+        @Description("Simulation steps run for this frame; more than one means the loop was catching up")
+        public int updates;
+    }
+
+    @Name("targetpractice.Click")
+    @Label("Click")
+    @Description("A click applied to the simulation, including the mode's hit test")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Click extends Event {
+        @Label("Mode")
+        public String mode;
+
+        @Label("X")
+        public int x;
+
+        @Label("Y")
+        public int y;
+
+        @Label("View Fraction")
+        @Description("Where in the step the screen was, in 1/256")
+        public int viewFraction;
+
+        @Label("Hit")
+        public boolean hit;
+
+        @Label("Points")
+        public int points;
+    }
+
+    @Name("targetpractice.Placement")
+    @Label("Target Placement")
+    @Description("Finding a spawn point or destination clear of the other targets")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Placement extends Event {
+        @Label("Target")
+        public int target;
+
+        @Label("Attempts")
+        public int attempts;
+
+        @Label("Placed")
+        @Description("False when the area was saturated and the target was left unspaced")
+        public boolean placed;
+    }
+
+    @Name("targetpractice.Saturated")
+    @Label("Play Area Saturated")
+    @Description("A placement found no point clear of the other targets after a run of successful ones; "
+            + "Target Placement events with Placed false show how long it lasted")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Saturated extends Event {
+        @Label("Target")
+        public int target;
+
+        @Label("Min Distance")
+        @Description("Spacing in pixels that no candidate could keep")
+        public int minDistance;
+    }
+
+    @Name("targetpractice.Respawn")
+    @Label("Respawn")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Respawn extends Event {
+        @Label("Mode")
+        public String mode;
+
+        @Label("Targets")
+        public int targets;
+    }
+
+    @Name("targetpractice.Save")
+    @Label("Save Game")
+    @Description("From the snapshot on the game loop until the file is written")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Save extends Event {
+        @Label("Size")
+        @DataAmount
+        public long bytes;
+
+        @Label("Succeeded")
+        public boolean succeeded;
+    }
+
+    @Name("targetpractice.Load")
+    @Label("Load Game")
+    @Description("From reading the file until the state is applied on the game loop")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Load extends Event {
+        @Label("Size")
+        @DataAmount
+        public long bytes;
+
+        @Label("Succeeded")
+        public boolean succeeded;
+    }
+
+    // Starts a recording with the JDK's default settings, which the events above are on
+    // in too, written to the file when the JVM exits
+    public static void startRecording(Path file) throws IOException, ParseException {
+        Recording recording = new Recording(Configuration.getConfiguration("default"));
+        recording.setName("TargetPractice");
+        recording.setDestination(file);
+        recording.setDumpOnExit(true);
+        recording.start();
+    }
+}
@@ -0,0 +1,214 @@
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+
+// Fixed-timestep game loop: the simulation advances in constant steps on a
+// nanoTime clock, and rendering happens once per loop pass at the target frame rate.
+public class GameLoop implements Runnable {
+    public interface Game {
+        void update(long gameTimeNanos); // advance the simulation by exactly one step
+        void render(double alpha);       // alpha is the fraction of the next step already elapsed
+
+        // Called on the loop thread once the loop has stopped because update or render kept failing
+        default void failed(RuntimeException error) {
+        }
+    }
+
+    private static final int MAX_STEPS_PER_FRAME = 5; // cap catch-up so a stall doesn't spiral
+
+    private final Game game;
+    private final long stepNanos;
+    private final long frameNanos;
+    private final int maxFailedUpdates, maxFailedRenders; // in a row, a second's worth, before the loop gives up
+    private volatile boolean running;
+    private Thread thread;
+
+    private volatile long tick;
+    private volatile int fps;
+    private final FrameStats stats;
+
+    // Bytes allocated by the loop thread per frame, measured only on request since the
+    // management bean takes a moment to load
+    private volatile boolean trackAllocation;
+    private ThreadMXBean threadBean;
+
+    // framesPerSecond <= 0 renders as fast as possible
+    public GameLoop(Game game, int updatesPerSecond, int framesPerSecond) {
+        this.game = game;
+        this.stepNanos = 1_000_000_000L / updatesPerSecond;
+        this.frameNanos = framesPerSecond > 0 ? 1_000_000_000L / framesPerSecond : 0;
+        this.maxFailedUpdates = updatesPerSecond;
+        this.maxFailedRenders = framesPerSecond > 0 ? framesPerSecond : updatesPerSecond;
+        this.stats = new FrameStats(frameNanos);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "game-loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Unless called from the loop itself, waits (up to a second) for the frame in
+    // progress to finish, so the caller can then touch the game state safely
+    public void stop() {
+        Thread stopped;
+        synchronized (this) {
+            running = false;
+            stopped = thread;
+            thread = null;
+        }
+        if (stopped == null) {
+            return;
+        }
+        stopped.interrupt();
+        if (stopped != Thread.currentThread()) {
+            try {
+                stopped.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        long previous = System.nanoTime();
+        long accumulator = 0;
+        long fpsWindowStart = previous;
+        long lastFrameStart = previous;
+        int frames = 0;
+        int failedUpdates = 0;
+        int failedRenders = 0;
+
+        // A bug that breaks one step or frame shouldn't end the game: it is dropped and the
+        // loop carries on. One that keeps failing for a second stops the loop.
+        while (running) {
+            RuntimeException failure = null;
+            long allocatedBefore = allocatedBytes();
+            long frameStart = System.nanoTime();
+            accumulator += frameStart - previous;
+            previous = frameStart;
+            if (accumulator > MAX_STEPS_PER_FRAME * stepNanos) {
+                accumulator = MAX_STEPS_PER_FRAME * stepNanos;
+            }
+
+            int updates = 0;
+            while (accumulator >= stepNanos && failure == null) {
+                long updateStart = System.nanoTime();
+                GameEvents.Update updateEvent = GameEvents.beginUpdate();
+                tick++;
+                try {
+                    game.update(getGameTimeNanos());
+                    failedUpdates = 0;
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    if (++failedUpdates >= maxFailedUpdates) {
+                        failure = e;
+                    }
+                }
+                accumulator -= stepNanos;
+                if (updateEvent != null) {
+                    updateEvent.tick = tick;
+                    updateEvent.commit();
+                }
+                stats.update.record(System.nanoTime() - updateStart);
+                updates++;
+            }
+            long renderStart = System.nanoTime();
+            GameEvents.Render renderEvent = GameEvents.beginRender();
+            try {
+                game.render((double) accumulator / stepNanos);
+                failedRenders = 0;
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                if (++failedRenders >= maxFailedRenders) {
+                    failure = e;
+                }
+            }
+            if (renderEvent != null) {
+                renderEvent.tick = tick;
+                renderEvent.updates = updates;
+                renderEvent.commit();
+            }
+            long renderEnd = System.nanoTime();
+            stats.render.record(renderEnd - renderStart);
+            stats.framePresented(renderEnd);
+            if (allocatedBefore >= 0) {
+                stats.recordAllocation(allocatedBytes() - allocatedBefore);
+            }
+            stats.recordFrameInterval(frameStart - lastFrameStart);
+            lastFrameStart = frameStart;
+            if (failure != null) {
+                System.err.println("Game loop stopping after " + Math.max(failedUpdates, failedRenders)
+                        + " failures in a row");
+                stop();
+                game.failed(failure);
+                return;
+            }
+
+            frames++;
+            if (frameStart - fpsWindowStart >= 1_000_000_000L) {
+                fps = frames;
+                frames = 0;
+                fpsWindowStart = frameStart;
+            }
+
+            long sleepNanos = frameStart + frameNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    public void setTrackAllocation(boolean track) {
+        trackAllocation = track;
+    }
+
+    // Bytes allocated by this thread so far, or -1 when not tracking
+    private long allocatedBytes() {
+        if (!trackAllocation) {
+            return -1;
+        }
+        if (threadBean == null) {
+            if (!(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean bean)
+                    || !bean.isThreadAllocatedMemorySupported()) {
+                trackAllocation = false;
+                return -1;
+            }
+            bean.setThreadAllocatedMemoryEnabled(true);
+            threadBean = bean;
+        }
+        return threadBean.getCurrentThreadAllocatedBytes();
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public long getStepNanos() {
+        return stepNanos;
+    }
+
+    // Simulation clock: advances only in whole steps, so it is identical for every run
+    public long getGameTimeNanos() {
+        return tick * stepNanos;
+    }
+
+    public int getFps() {
+        return fps;
+    }
+
+    public FrameStats getStats() {
+        return stats;
+    }
+}
@@ -0,0 +1,61 @@
+import java.awt.*;
+import java.nio.ByteBuffer;
+
+// A playable mode. ModeManager owns the lifecycle: start() once, then any number of
+// update/render/onClick calls with pause()/resume() in between, then dispose(), after
+// which the mode holds no scheduled events and is never used again. All times are
+// on the mode clock, which stands still while the game is paused.
+public interface GameMode {
+    int MISS = Integer.MIN_VALUE; // onClick result when nothing was hit
+
+    String getName(); // "easy", "hard", "stress" or "match"
+
+    void start(long gameTimeNanos);
+
+    // The manager stops the mode clock while paused; override to release resources meanwhile
+    default void pause() {
+    }
+
+    default void resume(long gameTimeNanos) {
+    }
+
+    void dispose();
+
+    void update(long gameTimeNanos);
+
+    // Called every step instead of update() while paused, for modes that can't stop the
+    // world they show, like a match the server keeps playing
+    default void updatePaused() {
+    }
+
+    void render(Graphics g);
+
+    // Adds the screen area that changed since the last call
+    void collectDamage(DirtyRegion region);
+
+    // Points scored by a click at (x, y), or MISS
+    int onClick(int x, int y);
+
+    // The mode time the screen shows, somewhat less than one step behind the last step.
+    // Modes that move in coarse ticks draw, and test clicks against, their targets where
+    // they are at that time rather than where the last tick left them.
+    default void setViewTime(long viewTimeNanos) {
+    }
+
+    // Mode time at which the current targets appeared, for the click timer
+    long getRoundStartTime();
+
+    // Save support: everything needed to carry on exactly where the mode left off.
+    // Times are written relative to 'now' so they can be restored onto any mode clock.
+    // 0 means the mode can't be saved, e.g. a match whose state is on the server; its
+    // state is then never written or read. Each writeState() follows one getStateSize()
+    // and writes exactly that many bytes.
+    int getStateSize();
+
+    default void writeState(ByteBuffer out, long now) {
+    }
+
+    // Called on a new mode before start(), which then carries on from the restored state
+    default void readState(ByteBuffer in, long now) {
+    }
+}
@@ -0,0 +1,41 @@
+import java.util.Random;
+
+// java.util.Random with its state exposed, so a save file can capture the generator
+// exactly. Uses the same 48-bit LCG as Random, so a given seed produces the same
+// numbers as new Random(seed). Unlike Random it is not thread-safe; each mode
+// draws from its own instance on the game thread.
+public class GameRandom extends Random {
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    private long state; // no initializer: Random's constructor sets it through setSeed
+
+    public GameRandom() {
+        super();
+    }
+
+    public GameRandom(long seed) {
+        super(seed);
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        state = (seed ^ MULTIPLIER) & MASK;
+        super.setSeed(seed); // resets the cached nextGaussian
+    }
+
+    @Override
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state & MASK;
+    }
+}
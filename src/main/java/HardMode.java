@@ -1,230 +1,344 @@
 import java.awt.*;
-import java.util.Random;
-import javax.swing.*;
-import java.io.File;
-import java.io.IOException;
-import javax.imageio.ImageIO;
-
-public class HardMode {
-    public int player1X, player1Y;
-    public int player2X, player2Y;
-    public int player3X, player3Y;
+import java.nio.ByteBuffer;
+
+public class HardMode implements GameMode, EventScheduler.Handler {
+    private static final int FRIEND_IMAGE = 0;
+    private static final int FOE_IMAGE = 1;
+    static final String[] IMAGES = {"/player.png", "/player01.png"}; // by image index
+    private static final int PLAYER_SIZE = 200;
+
+    public final TargetStore targets;
+    private final SpatialGrid positionGrid;    // current positions, for hit testing and spacing
+    private final SpatialGrid destinationGrid; // movement targets, so no two share a destination
+    private final PlacementSampler sampler;
     public int playerWidth, playerHeight;
-    private Random random;
+    private final GameRandom random;
     private int areaX, areaY, areaWidth, areaHeight;
-    private Image player1Image, player2Image, player3Image;
-    private int target1X, target1Y;
-    private int target2X, target2Y;
-    private int target3X, target3Y;
-    private final int stepSize = 10; // set slide speed to 10
-    private final int targetTolerance = 5; // tolerance for reaching the target
+    private final ImageCache.Sprite[] sprites = new ImageCache.Sprite[2];
+    private final HitMask[] hitMasks = new HitMask[2];
     private final int MIN_DISTANCE = 50; // minimum distance between players
 
-    private boolean canClickPlayer1 = true;
-    private boolean canClickPlayer2 = true;
-    private boolean canClickPlayer3 = true;
-    private final int clickCooldown = 300; // 300 milliseconds cooldown
+    private static final long CLICK_COOLDOWN_NANOS = 300_000_000L; // 300 milliseconds cooldown
+
+    private static final int EVENT_MOVE = 0;
+    private static final long MOVE_INTERVAL_NANOS = 50_000_000L; // players step every 50 ms of game time
+
+    // How far the view is from the last move to the next, out of PROGRESS_ONE. Targets are
+    // drawn and hit-tested that far between their previous and current positions, so they
+    // glide at the display rate while the simulation still moves them 20 times a second.
+    private static final int PROGRESS_ONE = 1 << 16;
+    private int viewProgress = PROGRESS_ONE;
 
-    private Timer movementTimer; // Timer to control player movement
+    private final EventScheduler scheduler;
+    private long moveEvent = EventScheduler.NO_EVENT;
+    private long nextMoveTime;
+    private long gameTimeNanos;
+    private long roundStartTime;
+    private boolean restored; // state came from readState() rather than a fresh spawn
 
-    public HardMode(int areaX, int areaY, int areaWidth, int areaHeight) {
-        random = new Random();
-        playerWidth = 200;
-        playerHeight = 200;
+    // Where each target was when damage was last collected, for dirty-rectangle rendering
+    private int[] drawnX = new int[0], drawnY = new int[0];
+
+    // The classic layout: one friendly target and two foes
+    public HardMode(int areaX, int areaY, int areaWidth, int areaHeight, EventScheduler scheduler) {
+        this(areaX, areaY, areaWidth, areaHeight, 1, 2, scheduler);
+    }
+
+    public HardMode(int areaX, int areaY, int areaWidth, int areaHeight, int friendCount, int foeCount,
+                    EventScheduler scheduler) {
+        this(areaX, areaY, areaWidth, areaHeight, friendCount, foeCount, scheduler, new GameRandom(), true);
+    }
+
+    // With backgroundRefill off every spawn point comes from 'random' on the calling thread,
+    // so the same seed always plays out the same way
+    public HardMode(int areaX, int areaY, int areaWidth, int areaHeight, int friendCount, int foeCount,
+                    EventScheduler scheduler, GameRandom random, boolean backgroundRefill) {
+        this.scheduler = scheduler;
+        this.random = random;
+        playerWidth = PLAYER_SIZE;
+        playerHeight = PLAYER_SIZE;
 
         this.areaX = areaX;
         this.areaY = areaY;
         this.areaWidth = areaWidth;
         this.areaHeight = areaHeight;
 
-        try {
-            player1Image = ImageIO.read(getClass().getResourceAsStream("/player.png"));
-            player2Image = ImageIO.read(getClass().getResourceAsStream("/player01.png"));
-            player3Image = ImageIO.read(getClass().getResourceAsStream("/player01.png"));
-        } catch (IOException e) {
-            e.printStackTrace();
+        // Shared with easy mode and every other HardMode; rendered once at 200x200
+        ImageCache imageCache = ImageCache.shared();
+        for (int image = 0; image < IMAGES.length; image++) {
+            sprites[image] = imageCache.sprite(IMAGES[image], playerWidth, playerHeight);
+            hitMasks[image] = sprites[image].getHitMask();
         }
 
-        respawnPlayers();
-        startMovementTimer(); // Start the movement timer
+        targets = new TargetStore(friendCount + foeCount);
+        for (int i = 0; i < friendCount; i++) {
+            targets.add(TargetStore.FRIEND, FRIEND_IMAGE);
+        }
+        for (int i = 0; i < foeCount; i++) {
+            targets.add(TargetStore.FOE, FOE_IMAGE);
+        }
+        int cellSize = 2 * MIN_DISTANCE;
+        positionGrid = new SpatialGrid(areaX, areaY, areaWidth, areaHeight, cellSize, targets.count);
+        destinationGrid = new SpatialGrid(areaX, areaY, areaWidth, areaHeight, cellSize, targets.count);
+        sampler = new PlacementSampler(areaX, areaY, areaWidth - playerWidth, areaHeight - playerHeight,
+                MIN_DISTANCE, random, backgroundRefill);
+        // Targets are placed in start(), unless a saved state is read first
     }
 
-    private void startMovementTimer() {
-        movementTimer = new Timer(50, e -> {
-            movePlayers();
-        });
-        movementTimer.start();
+    // Scales hard mode's sprites and builds their hit masks ahead of its first round, so
+    // starting one doesn't stall on them. Safe to run on any thread.
+    static void prefetch(ImageCache imageCache) {
+        for (String image : IMAGES) {
+            imageCache.sprite(image, PLAYER_SIZE, PLAYER_SIZE).prepare();
+        }
     }
 
-    private void movePlayers() {
-        moveToTarget(1);
-        moveToTarget(2);
-        moveToTarget(3);
+    @Override
+    public String getName() {
+        return "hard";
+    }
 
-        if (isAtTarget(1)) {
-            setNewTarget(1);
-        }
-        if (isAtTarget(2)) {
-            setNewTarget(2);
+    @Override
+    public void start(long gameTimeNanos) {
+        this.gameTimeNanos = gameTimeNanos;
+        if (!restored) {
+            respawnPlayers();
+            roundStartTime = gameTimeNanos;
+            nextMoveTime = gameTimeNanos + MOVE_INTERVAL_NANOS;
         }
-        if (isAtTarget(3)) {
-            setNewTarget(3);
+        moveEvent = scheduler.schedule(nextMoveTime, this, EVENT_MOVE, 0);
+    }
+
+    // Called once per game loop step; movement itself runs from a 50 ms scheduler event
+    @Override
+    public void update(long gameTimeNanos) {
+        this.gameTimeNanos = gameTimeNanos;
+    }
+
+    @Override
+    public void onEvent(int type, int arg, long gameTimeNanos) {
+        if (type == EVENT_MOVE) {
+            this.gameTimeNanos = gameTimeNanos;
+            movePlayers();
+            // Step from the previous deadline, not the firing time, so the cadence doesn't drift
+            nextMoveTime += MOVE_INTERVAL_NANOS;
+            moveEvent = scheduler.schedule(nextMoveTime, this, EVENT_MOVE, 0);
         }
     }
 
-    private void moveToTarget(int playerNumber) {
-        switch (playerNumber) {
-            case 1 -> {
-                player1X += Math.signum(target1X - player1X) * Math.min(stepSize, Math.abs(target1X - player1X));
-                player1Y += Math.signum(target1Y - player1Y) * Math.min(stepSize, Math.abs(target1Y - player1Y));
-            }
-            case 2 -> {
-                player2X += Math.signum(target2X - player2X) * Math.min(stepSize, Math.abs(target2X - player2X));
-                player2Y += Math.signum(target2Y - player2Y) * Math.min(stepSize, Math.abs(target2Y - player2Y));
-            }
-            case 3 -> {
-                player3X += Math.signum(target3X - player3X) * Math.min(stepSize, Math.abs(target3X - player3X));
-                player3Y += Math.signum(target3Y - player3Y) * Math.min(stepSize, Math.abs(target3Y - player3Y));
+    // Stops all of this mode's scheduled events; the instance must not be used afterwards
+    @Override
+    public void dispose() {
+        scheduler.cancelAll(this);
+        moveEvent = EventScheduler.NO_EVENT;
+    }
+
+    // Package-private so the JMH workloads can drive it directly
+    void movePlayers() {
+        sampler.beginFrame();
+        int count = targets.count;
+        System.arraycopy(targets.x, 0, targets.previousX, 0, count);
+        System.arraycopy(targets.y, 0, targets.previousY, 0, count);
+        for (int i = 0; i < count; i++) {
+            boolean arrived = targets.step(i);
+            positionGrid.move(i, targets.x[i], targets.y[i]);
+            if (arrived) {
+                setNewTarget(i);
             }
         }
     }
 
-    private boolean isAtTarget(int playerNumber) {
-        switch (playerNumber) {
-            case 1 -> {
-                return Math.abs(player1X - target1X) <= targetTolerance && Math.abs(player1Y - target1Y) <= targetTolerance;
-            }
-            case 2 -> {
-                return Math.abs(player2X - target2X) <= targetTolerance && Math.abs(player2Y - target2Y) <= targetTolerance;
-            }
-            case 3 -> {
-                return Math.abs(player3X - target3X) <= targetTolerance && Math.abs(player3Y - target3Y) <= targetTolerance;
-            }
-            default -> {
-                return false;
-            }
+    void setNewTarget(int i) {
+        // Must be clear of all other players' current positions and targets
+        if (sampler.place(positionGrid, destinationGrid, i)) {
+            targets.targetX[i] = sampler.getX();
+            targets.targetY[i] = sampler.getY();
+        } else {
+            // Area is saturated: hold still and try again on the next step
+            targets.targetX[i] = targets.x[i];
+            targets.targetY[i] = targets.y[i];
         }
+        destinationGrid.insert(i, targets.targetX[i], targets.targetY[i]);
     }
 
-    private void setNewTarget(int playerNumber) {
-        int newX, newY;
-        boolean isValidPosition;
-
-        do {
-            newX = random.nextInt(areaWidth - playerWidth) + areaX;
-            newY = random.nextInt(areaHeight - playerHeight) + areaY;
-
-            isValidPosition = true; // Assume the position is valid
-
-            // Check against all other players' current positions and targets
-            switch (playerNumber) {
-                case 1:
-                    if (!isFarEnough(newX, newY, player2X, player2Y) ||
-                            !isFarEnough(newX, newY, player3X, player3Y) ||
-                            (newX == target2X && newY == target2Y) ||
-                            (newX == target3X && newY == target3Y)) {
-                        isValidPosition = false; // Invalid if too close to player 2 or 3 or same as their targets
-                    }
-                    break;
-                case 2:
-                    if (!isFarEnough(newX, newY, player1X, player1Y) ||
-                            !isFarEnough(newX, newY, player3X, player3Y) ||
-                            (newX == target1X && newY == target1Y) ||
-                            (newX == target3X && newY == target3Y)) {
-                        isValidPosition = false;
-                    }
-                    break;
-                case 3:
-                    if (!isFarEnough(newX, newY, player1X, player1Y) ||
-                            !isFarEnough(newX, newY, player2X, player2Y) ||
-                            (newX == target1X && newY == target1Y) ||
-                            (newX == target2X && newY == target2Y)) {
-                        isValidPosition = false;
-                    }
-                    break;
-            }
-        } while (!isValidPosition);
+    @Override
+    public void setViewTime(long viewTimeNanos) {
+        long sinceMove = viewTimeNanos - (nextMoveTime - MOVE_INTERVAL_NANOS);
+        viewProgress = (int) Math.max(0, Math.min(PROGRESS_ONE, sinceMove * PROGRESS_ONE / MOVE_INTERVAL_NANOS));
+    }
 
-        // Assign the new target positions
-        switch (playerNumber) {
-            case 1 -> {
-                target1X = newX;
-                target1Y = newY;
-            }
-            case 2 -> {
-                target2X = newX;
-                target2Y = newY;
-            }
-            case 3 -> {
-                target3X = newX;
-                target3Y = newY;
+    // Where target i is on screen: between its previous and current position by viewProgress.
+    // Package-private for the match server, which sends these positions to its clients.
+    int viewX(int i) {
+        int from = targets.previousX[i];
+        return from + (int) ((long) (targets.x[i] - from) * viewProgress >> 16);
+    }
+
+    int viewY(int i) {
+        int from = targets.previousY[i];
+        return from + (int) ((long) (targets.y[i] - from) * viewProgress >> 16);
+    }
+
+    public void drawPlayers(Graphics g) {
+        int count = targets.count;
+        for (int i = 0; i < count; i++) {
+            sprites[targets.image[i]].draw(g, viewX(i), viewY(i));
+        }
+    }
+
+    @Override
+    public void render(Graphics g) {
+        drawPlayers(g);
+    }
+
+    // Adds the screen area each target left and entered since the last call
+    @Override
+    public void collectDamage(DirtyRegion region) {
+        int count = targets.count;
+        if (drawnX.length != count) {
+            drawnX = new int[count];
+            drawnY = new int[count];
+            region.markFull();
+        }
+        for (int i = 0; i < count; i++) {
+            int x = viewX(i), y = viewY(i);
+            if (x != drawnX[i] || y != drawnY[i]) {
+                region.addMove(drawnX[i], drawnY[i], x, y, playerWidth, playerHeight);
+                drawnX[i] = x;
+                drawnY[i] = y;
             }
         }
     }
 
-    private boolean isFarEnough(int x1, int y1, int x2, int y2) {
-        double distance = Math.sqrt(Math.pow(x2 - x1, 2) + Math.pow(y2 - y1, 2));
-        return distance >= MIN_DISTANCE;
+    // Returns the index of the clicked target, or -1 if nothing clickable is under the point.
+    // Targets are tested where they were drawn, at the view time, and only their visible
+    // pixels count, so a click through one's transparent corner reaches the one below.
+    public int checkPlayerClick(int clickX, int clickY) {
+        // Every target whose drawn bounds contain the click has its top-left corner in this
+        // box; the grid holds current positions, which are at most one step further on
+        int step = TargetStore.STEP_SIZE;
+        int found = positionGrid.query(clickX - playerWidth + 1 - step, clickY - playerHeight + 1 - step,
+                clickX + step, clickY + step);
+        int[] candidates = positionGrid.results();
+
+        // Prioritize the last drawn player, i.e. the highest index
+        int hit = -1;
+        for (int k = 0; k < found; k++) {
+            int i = candidates[k];
+            if (i > hit && hitMasks[targets.image[i]].contains(clickX - viewX(i), clickY - viewY(i))
+                    && gameTimeNanos >= targets.cooldownUntil[i]) {
+                hit = i;
+            }
+        }
+        if (hit >= 0) {
+            targets.cooldownUntil[hit] = gameTimeNanos + CLICK_COOLDOWN_NANOS;
+        }
+        return hit; // -1 if no player was clicked
     }
 
-    public void drawPlayers(Graphics g) {
-        g.drawImage(player1Image, player1X, player1Y, playerWidth, playerHeight, null);
-        g.drawImage(player2Image, player2X, player2Y, playerWidth, playerHeight, null);
-        g.drawImage(player3Image, player3X, player3Y, playerWidth, playerHeight, null);
+    // Scores the clicked target by its type, then respawns every target
+    @Override
+    public int onClick(int x, int y) {
+        int hit = checkPlayerClick(x, y);
+        if (hit < 0) {
+            return MISS;
+        }
+        int points = targets.getPoints(hit);
+        respawnPlayers(); // Respawn players after a click
+        roundStartTime = gameTimeNanos;
+        return points;
     }
 
-    public boolean checkPlayerClick(int clickX, int clickY) {
-        Rectangle player1Bounds = new Rectangle(player1X, player1Y, playerWidth, playerHeight);
-        Rectangle player2Bounds = new Rectangle(player2X, player2Y, playerWidth, playerHeight);
-        Rectangle player3Bounds = new Rectangle(player3X, player3Y, playerWidth, playerHeight);
+    @Override
+    public long getRoundStartTime() {
+        return roundStartTime;
+    }
 
-        // Check in reverse order to prioritize the last drawn player
-        if (player3Bounds.contains(clickX, clickY) && canClickPlayer3) {
-            canClickPlayer3 = false;
-//            handlePlayerClick(3); // Handle player 3 click
-            resetClickCooldown(3);
-            return true;
+    public void respawnPlayers() {
+        GameEvents.Respawn event = GameEvents.beginRespawn();
+        sampler.beginFrame();
+        int count = targets.count;
+        for (int i = 0; i < count; i++) {
+            // If the area is saturated the last candidate is still inside the area, just not spaced
+            positionGrid.remove(i);
+            sampler.place(positionGrid, null, i);
+            targets.x[i] = sampler.getX();
+            targets.y[i] = sampler.getY();
+            targets.previousX[i] = targets.x[i]; // jumps straight there
+            targets.previousY[i] = targets.y[i];
+            positionGrid.insert(i, targets.x[i], targets.y[i]);
         }
-        if (player2Bounds.contains(clickX, clickY) && canClickPlayer2) {
-            canClickPlayer2 = false;
-//            handlePlayerClick(2); // Handle player 2 click
-            resetClickCooldown(2);
-            return true;
+        for (int i = 0; i < count; i++) {
+            setNewTarget(i);
         }
-        if (player1Bounds.contains(clickX, clickY) && canClickPlayer1) {
-            canClickPlayer1 = false;
-//            handlePlayerClick(1); // Handle player 1 click
-            resetClickCooldown(1);
-            return true;
+        if (event != null && event.shouldCommit()) {
+            event.mode = getName();
+            event.targets = count;
+            event.commit();
         }
+    }
 
-        return false; // No player was clicked
+    // Targets keep the friend/foe order they were created with, so the type counts
+    // (passed to the constructor) are not part of this state
+    @Override
+    public int getStateSize() {
+        return 8 + 8 + 8 + 4 + targets.count * (6 * 4 + 8) + sampler.getStateSize();
     }
 
-    private void handlePlayerClick(int playerNumber) {
-        // Your existing click handling logic for the player
-        System.out.println("Player " + playerNumber + " clicked!"); // Example action
+    @Override
+    public void writeState(ByteBuffer out, long now) {
+        out.putLong(random.getState());
+        out.putLong(roundStartTime - now);
+        out.putLong(nextMoveTime - now);
+        int count = targets.count;
+        out.putInt(count);
+        for (int i = 0; i < count; i++) {
+            out.putInt(targets.x[i]);
+            out.putInt(targets.y[i]);
+            out.putInt(targets.previousX[i]);
+            out.putInt(targets.previousY[i]);
+            out.putInt(targets.targetX[i]);
+            out.putInt(targets.targetY[i]);
+            out.putLong(Math.max(0, targets.cooldownUntil[i] - now)); // cooldown remaining
+        }
+        sampler.writeState(out);
     }
 
-    private void resetClickCooldown(int playerNumber) {
-        new Timer(clickCooldown, e -> {
-            switch (playerNumber) {
-                case 1 -> canClickPlayer1 = true;
-                case 2 -> canClickPlayer2 = true;
-                case 3 -> canClickPlayer3 = true;
+    @Override
+    public void readState(ByteBuffer in, long now) {
+        random.setState(in.getLong());
+        roundStartTime = now + in.getLong();
+        nextMoveTime = now + in.getLong();
+        int count = in.getInt();
+        if (count != targets.count) {
+            throw new IllegalArgumentException("Saved " + count + " targets, mode has " + targets.count);
+        }
+        for (int i = 0; i < count; i++) {
+            targets.x[i] = in.getInt();
+            targets.y[i] = in.getInt();
+            targets.previousX[i] = in.getInt();
+            targets.previousY[i] = in.getInt();
+            targets.targetX[i] = in.getInt();
+            targets.targetY[i] = in.getInt();
+            targets.cooldownUntil[i] = now + in.getLong();
+            positionGrid.insert(i, targets.x[i], targets.y[i]);
+            destinationGrid.insert(i, targets.targetX[i], targets.targetY[i]);
+        }
+        sampler.readState(in);
+        restored = true;
+    }
+
+    public int getFriendCount() {
+        int friends = 0;
+        for (int i = 0; i < targets.count; i++) {
+            if (targets.type[i] == TargetStore.FRIEND) {
+                friends++;
             }
-        }).start();
+        }
+        return friends;
     }
 
-    public void respawnPlayers() {
-        setNewTarget(1);
-        setNewTarget(2);
-        setNewTarget(3);
-        player1X = random.nextInt(areaWidth - playerWidth) + areaX;
-        player1Y = random.nextInt(areaHeight - playerHeight) + areaY;
-        player2X = random.nextInt(areaWidth - playerWidth) + areaX;
-        player2Y = random.nextInt(areaHeight - playerHeight) + areaY;
-        player3X = random.nextInt(areaWidth - playerWidth) + areaX;
-        player3Y = random.nextInt(areaHeight - playerHeight) + areaY;
+    public boolean isAreaSaturated() {
+        return sampler.isSaturated();
     }
 }
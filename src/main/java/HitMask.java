@@ -0,0 +1,50 @@
+import java.awt.image.BufferedImage;
+
+// Which pixels of a sprite count as the target: one bit per pixel, set where the
+// sprite is at least half opaque, packed row by row into longs. It is built once per
+// draw size, so testing a click is a bounds check and one bit lookup.
+public class HitMask {
+    private static final int OPAQUE_ALPHA = 128;
+
+    private final int width, height;
+    private final int wordsPerRow;
+    private final long[] bits;
+
+    private HitMask(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.bits = new long[wordsPerRow * height];
+    }
+
+    public static HitMask of(BufferedImage image) {
+        HitMask mask = new HitMask(image.getWidth(), image.getHeight());
+        int[] row = new int[mask.width];
+        for (int y = 0; y < mask.height; y++) {
+            image.getRGB(0, y, mask.width, 1, row, 0, mask.width);
+            int base = y * mask.wordsPerRow;
+            for (int x = 0; x < mask.width; x++) {
+                if (row[x] >>> 24 >= OPAQUE_ALPHA) {
+                    mask.bits[base + (x >>> 6)] |= 1L << x; // the shift only uses the low 6 bits
+                }
+            }
+        }
+        return mask;
+    }
+
+    // (x, y) relative to the sprite's top-left corner
+    public boolean contains(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return false;
+        }
+        return (bits[y * wordsPerRow + (x >>> 6)] & 1L << x) != 0;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,102 @@
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.util.Arrays;
+
+// A line of text built in a reusable char array, so HUD lines can be rebuilt, compared
+// and drawn every frame without creating Strings. Text past the capacity is dropped.
+public class HudText {
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000};
+
+    private final char[] chars;
+    private int length;
+
+    public HudText(int capacity) {
+        chars = new char[capacity];
+    }
+
+    public HudText clear() {
+        length = 0;
+        return this;
+    }
+
+    public HudText append(char c) {
+        if (length < chars.length) {
+            chars[length++] = c;
+        }
+        return this;
+    }
+
+    public HudText append(String text) {
+        int n = Math.min(text.length(), chars.length - length);
+        text.getChars(0, n, chars, length);
+        length += n;
+        return this;
+    }
+
+    public HudText append(long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                return append("-9223372036854775808");
+            }
+            append('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        if (length + digits > chars.length) {
+            return this;
+        }
+        for (int i = length + digits - 1; i >= length; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+        return this;
+    }
+
+    // A fixed-point number: appendFixed(1234, 2) gives "12.34"
+    public HudText appendFixed(long scaled, int decimals) {
+        if (scaled < 0) {
+            append('-');
+            scaled = -scaled;
+        }
+        long unit = POWERS_OF_TEN[decimals];
+        append(scaled / unit);
+        if (decimals > 0) {
+            append('.');
+            long fraction = scaled % unit;
+            for (long digit = unit / 10; digit > 0; digit /= 10) {
+                append((char) ('0' + fraction / digit % 10));
+            }
+        }
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    public boolean contentEquals(HudText other) {
+        return Arrays.equals(chars, 0, length, other.chars, 0, other.length);
+    }
+
+    public void set(HudText other) {
+        length = Math.min(other.length, chars.length);
+        System.arraycopy(other.chars, 0, chars, 0, length);
+    }
+
+    public int getWidth(FontMetrics metrics) {
+        return metrics.charsWidth(chars, 0, length);
+    }
+
+    public void draw(Graphics g, int x, int y) {
+        g.drawChars(chars, 0, length, x, y);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+}
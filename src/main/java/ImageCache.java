@@ -0,0 +1,232 @@
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Decodes each image resource once and keeps copies pre-scaled to the exact size
+// they are drawn at, in the screen's native pixel format. Java2D caches such
+// compatible images in video memory, so drawing one is a plain unscaled blit.
+// Decoding and scaling may happen on loader threads ahead of time; a thread that
+// needs an image still in progress waits for it rather than decoding it again.
+public class ImageCache {
+    private static final ImageCache SHARED = new ImageCache();
+
+    // A handle to one resource at one draw size. Hold on to it instead of looking it
+    // up every frame; it re-renders itself after the cache is invalidated.
+    public final class Sprite {
+        private final String resource;
+        private final int width, height;
+        private BufferedImage image;
+        private volatile int generation = -1; // written after image, so a reader that sees it sees the image
+        private double scaleX = 1, scaleY = 1;
+        private HitMask hitMask;
+
+        private Sprite(String resource, int width, int height) {
+            this.resource = resource;
+            this.width = width;
+            this.height = height;
+        }
+
+        public BufferedImage get() {
+            if (generation != ImageCache.this.generation) {
+                render();
+                misses.incrementAndGet();
+            } else {
+                hits.incrementAndGet();
+            }
+            return image;
+        }
+
+        // Scales the image and builds its hit mask now, e.g. on a loader thread, so the
+        // first frame or mode to use it doesn't have to
+        public void prepare() {
+            if (generation != ImageCache.this.generation) {
+                render();
+            }
+            getHitMask();
+        }
+
+        public void draw(Graphics g, int x, int y) {
+            BufferedImage current = get();
+            if (scaleX == 1 && scaleY == 1) {
+                g.drawImage(current, x, y, null);
+            } else {
+                // HiDPI: the image holds device pixels, so this maps 1:1 onto the screen
+                g.drawImage(current, x, y, width, height, null);
+            }
+        }
+
+        private void render() {
+            synchronized (this) {
+                int currentGeneration = ImageCache.this.generation;
+                if (generation == currentGeneration) {
+                    return; // another thread rendered it while this one waited
+                }
+                BufferedImage source = decode(resource);
+                GraphicsConfiguration gc = graphicsConfiguration;
+                if (gc != null) {
+                    AffineTransform transform = gc.getDefaultTransform();
+                    scaleX = transform.getScaleX();
+                    scaleY = transform.getScaleY();
+                } else {
+                    scaleX = 1;
+                    scaleY = 1;
+                }
+                int deviceWidth = Math.max(1, (int) Math.round(width * scaleX));
+                int deviceHeight = Math.max(1, (int) Math.round(height * scaleY));
+                BufferedImage scaled = gc != null
+                        ? gc.createCompatibleImage(deviceWidth, deviceHeight, source.getTransparency())
+                        : new BufferedImage(deviceWidth, deviceHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+                Graphics2D g = scaled.createGraphics();
+                try {
+                    g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+                    g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                    g.drawImage(source, 0, 0, deviceWidth, deviceHeight, null);
+                } finally {
+                    g.dispose();
+                }
+                footprintBytes.addAndGet(bytesOf(scaled) - bytesOf(image));
+                image = scaled;
+                generation = currentGeneration;
+            }
+        }
+
+        // The sprite's opaque pixels at its draw size, in logical pixels like clicks. Built on
+        // the first call and kept, whatever the screen; modes fetch it when they are created
+        // so no click pays for it.
+        public HitMask getHitMask() {
+            synchronized (this) {
+                if (hitMask == null) {
+                    BufferedImage logical = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+                    Graphics2D g = logical.createGraphics();
+                    try {
+                        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+                        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                        g.drawImage(decode(resource), 0, 0, width, height, null);
+                    } finally {
+                        g.dispose();
+                    }
+                    hitMask = HitMask.of(logical);
+                }
+                return hitMask;
+            }
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+    }
+
+    private final Map<String, CompletableFuture<BufferedImage>> decoded = new ConcurrentHashMap<>();
+    private final Map<String, Sprite> sprites = new HashMap<>();
+    private volatile GraphicsConfiguration graphicsConfiguration;
+    private volatile int generation;
+
+    // Updated by every thread that draws or loads images, for the F3 overlay
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong footprintBytes = new AtomicLong();
+
+    public static ImageCache shared() {
+        return SHARED;
+    }
+
+    // The original, unscaled image; decoded on first use
+    public BufferedImage decode(String resource) {
+        return decodeAsync(resource, Runnable::run).join();
+    }
+
+    // Starts decoding the image on the executor, unless it is decoded or on its way already
+    public CompletableFuture<BufferedImage> decodeAsync(String resource, Executor executor) {
+        CompletableFuture<BufferedImage> image = decoded.get(resource);
+        if (image == null) {
+            CompletableFuture<BufferedImage> started = new CompletableFuture<>();
+            image = decoded.putIfAbsent(resource, started);
+            if (image == null) {
+                image = started;
+                executor.execute(() -> {
+                    BufferedImage original = read(resource);
+                    footprintBytes.addAndGet(bytesOf(original));
+                    started.complete(original);
+                });
+            }
+        }
+        return image;
+    }
+
+    private BufferedImage read(String resource) {
+        try (InputStream in = getClass().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Image not found: " + resource);
+            }
+            return ImageIO.read(in);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB); // keep drawing rather than crash
+        }
+    }
+
+    public synchronized Sprite sprite(String resource, int width, int height) {
+        return sprites.computeIfAbsent(resource + "@" + width + "x" + height,
+                key -> new Sprite(resource, width, height));
+    }
+
+    // Drops a sprite that will not be drawn again, e.g. a background at the old window size
+    public synchronized void evict(Sprite sprite) {
+        if (sprites.remove(sprite.resource + "@" + sprite.width + "x" + sprite.height) == sprite) {
+            synchronized (sprite) {
+                footprintBytes.addAndGet(-bytesOf(sprite.image));
+            }
+        }
+    }
+
+    // Call from the render path; a new screen or DPI scale re-renders every sprite
+    public void setGraphicsConfiguration(GraphicsConfiguration gc) {
+        GraphicsConfiguration current = graphicsConfiguration;
+        if (gc == current) {
+            return;
+        }
+        if (current == null || gc == null || !gc.getDefaultTransform().equals(current.getDefaultTransform())
+                || !gc.getColorModel().equals(current.getColorModel())) {
+            graphicsConfiguration = gc;
+            invalidate();
+        } else {
+            graphicsConfiguration = gc;
+        }
+    }
+
+    public synchronized void invalidate() {
+        generation++;
+    }
+
+    // Sprite draws that found the sprite rendered, and ones that had to render it first
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // Approximate bytes held by decoded originals and rendered sprites, kept up to date as
+    // they come and go so reading it costs nothing
+    public long getFootprintBytes() {
+        return footprintBytes.get();
+    }
+
+    private static long bytesOf(BufferedImage image) {
+        return image == null ? 0 : 4L * image.getWidth() * image.getHeight(); // about 4 bytes per pixel
+    }
+}
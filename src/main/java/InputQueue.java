@@ -0,0 +1,75 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+// Input events from the EDT to the game loop, without locks or allocation. It is a
+// single-producer, single-consumer ring: the EDT fills an event's slot and then
+// publishes it by advancing the tail with a release store; the loop reads everything
+// up to the tail and hands the slots back by advancing the head. If the loop falls a
+// whole ring behind, new events are dropped rather than blocking the EDT.
+public class InputQueue {
+    public static final int NONE = 0;
+    public static final int CLICK = 1;       // a = x, b = y, time = nanoTime of the press
+    public static final int TOGGLE_MENU = 2;
+    public static final int MENU = 3;        // a = option
+
+    private static final int CAPACITY = 1024;
+
+    private final int[] types = new int[CAPACITY];
+    private final int[] as = new int[CAPACITY];
+    private final int[] bs = new int[CAPACITY];
+    private final long[] times = new long[CAPACITY];
+    private final AtomicLong head = new AtomicLong(); // next slot to read; only the consumer writes it
+    private final AtomicLong tail = new AtomicLong(); // next slot to fill; only the producer writes it
+    private final AtomicLong dropped = new AtomicLong();
+
+    // The event last taken by poll()
+    private int a, b;
+    private long time;
+
+    // Producer side. Returns false, dropping the event, if the ring is full.
+    public boolean offer(int type, int a, int b, long time) {
+        long position = tail.getPlain();
+        if (position - head.getAcquire() == CAPACITY) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        int slot = (int) position & (CAPACITY - 1);
+        types[slot] = type;
+        as[slot] = a;
+        bs[slot] = b;
+        times[slot] = time;
+        tail.setRelease(position + 1);
+        return true;
+    }
+
+    // Consumer side: takes the oldest event and returns its type, or NONE when the queue
+    // is empty. The event's payload is then available from getA(), getB() and getTime().
+    public int poll() {
+        long position = head.getPlain();
+        if (position == tail.getAcquire()) {
+            return NONE;
+        }
+        int slot = (int) position & (CAPACITY - 1);
+        int type = types[slot];
+        a = as[slot];
+        b = bs[slot];
+        time = times[slot];
+        head.setRelease(position + 1);
+        return type;
+    }
+
+    public int getA() {
+        return a;
+    }
+
+    public int getB() {
+        return b;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,149 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Writes every input that reaches the simulation to a compact binary log, so a
+// session can be replayed exactly by InputReplay.
+//
+// Layout: a header (magic, version, seed, updates per second), then one record per
+// input: a type byte, the tick as a varint delta from the previous record, and a
+// payload. Click coordinates are zigzag varint deltas from the previous click, so a
+// typical click takes 5-7 bytes with its view fraction. The log ends with an END record holding the final
+// score, which replay checks against. Records are buffered and reach the file in
+// 64 KB writes.
+public class InputRecorder implements Simulation.InputListener, AutoCloseable {
+    static final int MAGIC = 0x54504952; // "TPIR"
+    static final int VERSION = 5; // 4: clicks carry their view fraction; 5: only opaque pixels hit
+
+    static final byte CLICK = 1;       // x, y, view fraction byte
+    static final byte TOGGLE_MENU = 2; // ESC
+    static final byte MENU = 3;        // option index
+    static final byte RESTORE = 4;     // length, then a loaded Simulation.saveState()
+    static final byte END = 5;         // final points
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private long lastTick;
+    private int lastX, lastY;
+    private boolean closed;
+
+    public InputRecorder(Path file, long seed, int updatesPerSecond) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putInt(MAGIC);
+        buffer.put((byte) VERSION);
+        buffer.putLong(seed);
+        putVarint(updatesPerSecond);
+    }
+
+    @Override
+    public synchronized void onClick(long tick, int x, int y, int viewFraction, int scored) {
+        if (!begin(CLICK, tick)) {
+            return;
+        }
+        putVarint(zigzag(x - lastX));
+        putVarint(zigzag(y - lastY));
+        buffer.put((byte) viewFraction);
+        lastX = x;
+        lastY = y;
+    }
+
+    @Override
+    public synchronized void onToggleMenu(long tick) {
+        begin(TOGGLE_MENU, tick);
+    }
+
+    @Override
+    public synchronized void onMenuOption(long tick, int option) {
+        if (!begin(MENU, tick)) {
+            return;
+        }
+        putVarint(option);
+    }
+
+    // The save lives outside the log, so the state it restored is logged in full
+    @Override
+    public synchronized void onLoad(long tick, ByteBuffer state) {
+        if (!begin(RESTORE, tick)) {
+            return;
+        }
+        state = state.duplicate();
+        putVarint(state.remaining());
+        try {
+            if (state.remaining() > buffer.remaining()) {
+                flush();
+                while (state.hasRemaining()) {
+                    channel.write(state);
+                }
+            } else {
+                buffer.put(state);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write input log", e);
+        }
+    }
+
+    // Writes the END record and closes the file
+    public synchronized void finish(long tick, int points) throws IOException {
+        if (!begin(END, tick)) {
+            return;
+        }
+        putVarint(zigzag(points));
+        close();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flush();
+        channel.close();
+    }
+
+    // Starts a record; false once the recorder is closed, e.g. input arriving during shutdown
+    private boolean begin(byte type, long tick) {
+        if (closed) {
+            return false;
+        }
+        if (buffer.remaining() < 64) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to write input log", e);
+            }
+        }
+        buffer.put(type);
+        putVarint(tick - lastTick);
+        lastTick = tick;
+        return true;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void putVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
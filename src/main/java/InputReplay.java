@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Feeds a log written by InputRecorder back into a Simulation. The game uses it to
+// replay at normal speed with -Dtargetpractice.replay=<file>; main() replays
+// headless as fast as possible and checks the final score.
+public class InputReplay {
+    private final ByteBuffer log;
+    private final long seed;
+    private final int updatesPerSecond;
+    private long nextTick;
+    private byte nextType;
+    private int lastX, lastY;
+    private boolean finished;
+    private int expectedPoints;
+
+    public InputReplay(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            log = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (log.hasRemaining() && channel.read(log) >= 0) {
+                // read the whole log; they are small
+            }
+        }
+        log.flip();
+        if (log.remaining() < 13 || log.getInt() != InputRecorder.MAGIC) {
+            throw new IOException("Not an input log: " + file);
+        }
+        int version = log.get();
+        if (version != InputRecorder.VERSION) {
+            throw new IOException("Unsupported input log version " + version + ": " + file);
+        }
+        seed = log.getLong();
+        updatesPerSecond = (int) getVarint();
+        readRecordHeader();
+    }
+
+    // A simulation in the state the recording started from
+    public Simulation createSimulation() {
+        Simulation simulation = new Simulation(seed, updatesPerSecond);
+        simulation.startDemo();
+        return simulation;
+    }
+
+    // Applies every input recorded before the simulation's next step. Returns false once
+    // the log is used up; at that point the simulation is where the recording ended.
+    public boolean apply(Simulation simulation) {
+        while (!finished && nextTick <= simulation.getTick()) {
+            switch (nextType) {
+                case InputRecorder.CLICK -> {
+                    lastX += (int) InputRecorder.unzigzag(getVarint());
+                    lastY += (int) InputRecorder.unzigzag(getVarint());
+                    simulation.click(lastX, lastY, log.get() & 0xFF);
+                }
+                case InputRecorder.TOGGLE_MENU -> simulation.toggleMenu();
+                case InputRecorder.MENU -> simulation.chooseMenuOption((int) getVarint());
+                case InputRecorder.RESTORE -> {
+                    int length = (int) getVarint();
+                    simulation.loadState(log.slice(log.position(), length));
+                    log.position(log.position() + length);
+                }
+                case InputRecorder.END -> {
+                    expectedPoints = (int) InputRecorder.unzigzag(getVarint());
+                    finished = true;
+                    return false;
+                }
+                default -> throw new IllegalStateException("Corrupt input log: record type " + nextType);
+            }
+            readRecordHeader();
+        }
+        return !finished;
+    }
+
+    private void readRecordHeader() {
+        if (!log.hasRemaining()) {
+            // Cut short, e.g. the game was killed: replay what there is, with nothing to verify
+            finished = true;
+            expectedPoints = Integer.MIN_VALUE;
+            return;
+        }
+        nextType = log.get();
+        nextTick += getVarint();
+    }
+
+    private long getVarint() {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = log.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    // The score the recording ended with, or Integer.MIN_VALUE if the log has no END record
+    public int getExpectedPoints() {
+        return expectedPoints;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getUpdatesPerSecond() {
+        return updatesPerSecond;
+    }
+
+    // java -Djava.awt.headless=true -cp target/classes InputReplay session.tpr
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: InputReplay <input log>");
+            System.exit(2);
+        }
+        InputReplay replay = new InputReplay(Path.of(args[0]));
+        Simulation simulation = replay.createSimulation();
+        long started = System.nanoTime();
+        while (replay.apply(simulation)) {
+            simulation.step();
+        }
+        long elapsed = System.nanoTime() - started;
+        simulation.shutdown();
+
+        System.out.printf("Replayed %d steps (%.1f s of play) in %.1f ms%n", simulation.getTick(),
+                (double) simulation.getTick() / replay.getUpdatesPerSecond(), elapsed / 1e6);
+        if (replay.getExpectedPoints() == Integer.MIN_VALUE) {
+            System.out.println("Log has no end record; final score " + simulation.getPoints() + " not verified");
+        } else if (replay.getExpectedPoints() == simulation.getPoints()) {
+            System.out.println("Final score " + simulation.getPoints() + " matches the recording");
+        } else {
+            System.out.println("MISMATCH: recorded " + replay.getExpectedPoints() + ", replayed " + simulation.getPoints());
+            System.exit(1);
+        }
+    }
+}
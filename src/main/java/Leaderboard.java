@@ -0,0 +1,487 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// The best score of every player profile in one game mode, kept on disk across
+// sessions. Bests live in a sorted segment file that never changes once written:
+// fixed 32-byte records ordered best score first, followed by an index of the same
+// records ordered by name. A profile's best, its rank and the top K are binary
+// searches or a short sequential read of the segment, through a small LRU page
+// cache.
+//
+// New bests go into an in-memory table instead, backed by an append-only log so they
+// survive a crash, and queries combine the two. Once the table holds MEMTABLE_LIMIT
+// profiles it is merged with the segment into a new one, which replaces the old
+// atomically, and the log is emptied. Memory use is bounded by the table and the
+// page cache, whatever the number of players.
+//
+// Segment layout (little-endian): a 32-byte header of int magic, short version,
+// short record size, int count; count records of int score, byte name length and
+// 27 bytes of UTF-8 name; then count ints, the record numbers sorted by name bytes.
+// The log is a sequence of the same records.
+public class Leaderboard {
+    public static final int NO_SCORE = Integer.MIN_VALUE;
+    public static final int MAX_NAME_LENGTH = 24; // characters
+
+    static final int MAGIC = 0x54504C42; // "TPLB"
+    static final short VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int NAME_BYTES = 27;
+    private static final int RECORD_BYTES = 4 + 1 + NAME_BYTES;
+    private static final int PAGE_BYTES = 4096;
+    private static final int CACHED_PAGES = 64;    // 256 KB of the segment
+    private static final int MEMTABLE_LIMIT = 512; // new bests held before a merge
+    private static final int TOP_CACHE_SIZE = 20;
+
+    private static final ExecutorService IO = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "leaderboard-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public record Entry(String name, int score) {
+    }
+
+    // A best that isn't in the segment yet
+    private static final class Pending {
+        final String name;
+        final byte[] key;
+        final int segmentRow; // the row it supersedes, or -1 for a new profile
+        int score;
+        int newRow;
+
+        Pending(String name, byte[] key, int segmentRow) {
+            this.name = name;
+            this.key = key;
+            this.segmentRow = segmentRow;
+        }
+    }
+
+    private static final Comparator<Pending> BY_SCORE = (a, b) ->
+            a.score != b.score ? Integer.compare(b.score, a.score) : Arrays.compareUnsigned(a.key, b.key);
+    private static final Comparator<Pending> BY_NAME = (a, b) -> Arrays.compareUnsigned(a.key, b.key);
+
+    private final Path segmentFile;
+    private FileChannel segment;
+    private int count;
+    private long indexOffset;
+    private final Map<Long, ByteBuffer> pages = new LinkedHashMap<>(CACHED_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, ByteBuffer> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+
+    private final FileChannel log;
+    private final Map<String, Pending> pending = new HashMap<>();
+    // Scores in ascending order: the pending bests, and the segment scores they supersede
+    private int[] pendingScores = new int[64];
+    private int pendingCount;
+    private int[] staleScores = new int[64];
+    private int staleCount;
+    private List<Entry> topCache;
+
+    // ~/Documents/target_practice-<mode>.board unless -Dtargetpractice.leaderboard=<base> says otherwise
+    public static Path defaultPath(String mode) {
+        String configured = System.getProperty("targetpractice.leaderboard");
+        Path base = configured != null ? Path.of(configured)
+                : Path.of(System.getProperty("user.home"), "Documents", "target_practice");
+        return base.resolveSibling(base.getFileName() + "-" + mode + ".board");
+    }
+
+    // Trims a profile name and shortens it to fit a record; blank names aren't allowed
+    public static String normalizeName(String name) {
+        String trimmed = name.strip();
+        if (trimmed.isEmpty()) {
+            throw new IllegalArgumentException("Blank player name");
+        }
+        if (trimmed.codePointCount(0, trimmed.length()) > MAX_NAME_LENGTH) {
+            trimmed = trimmed.substring(0, trimmed.offsetByCodePoints(0, MAX_NAME_LENGTH));
+        }
+        while (trimmed.getBytes(StandardCharsets.UTF_8).length > NAME_BYTES) {
+            trimmed = trimmed.substring(0, trimmed.offsetByCodePoints(trimmed.length(), -1));
+        }
+        return trimmed;
+    }
+
+    public Leaderboard(Path file) throws IOException {
+        segmentFile = file;
+        if (!Files.exists(file)) {
+            SaveFile.writeAtomically(file, channel -> {
+                ByteBuffer header = header(0).flip();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+            });
+        }
+        openSegment();
+
+        Path logFile = file.resolveSibling(file.getFileName() + ".log");
+        log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer records = ByteBuffer.allocate((int) (log.size() / RECORD_BYTES * RECORD_BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+        while (records.hasRemaining() && log.read(records, records.position()) >= 0) {
+            // read every complete record; a torn one at the end is dropped
+        }
+        records.flip();
+        while (records.hasRemaining()) {
+            int start = records.position();
+            int score = records.getInt();
+            int length = records.get() & 0xFF;
+            if (length == 0 || length > NAME_BYTES) {
+                records.position(start);
+                break; // garbage past the last good record
+            }
+            byte[] key = new byte[length];
+            records.get(key);
+            records.position(records.position() + NAME_BYTES - length);
+            apply(new String(key, StandardCharsets.UTF_8), key, score);
+        }
+        log.truncate(records.position());
+        log.position(records.position());
+        if (pendingCount >= MEMTABLE_LIMIT) {
+            compact();
+        }
+    }
+
+    // Runs submit() on the leaderboard's I/O thread
+    public CompletableFuture<Integer> submitAsync(String name, int score) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return submit(name, score);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, IO);
+    }
+
+    // Records a finished round; only a new best for the profile changes anything.
+    // Returns the profile's rank afterwards.
+    public synchronized int submit(String name, int score) throws IOException {
+        name = normalizeName(name);
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        if (apply(name, key, score)) {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            putRecord(record, key, score);
+            record.flip();
+            while (record.hasRemaining()) {
+                log.write(record);
+            }
+            log.force(false);
+            if (pendingCount >= MEMTABLE_LIMIT) {
+                compact();
+            }
+        }
+        return getRank(name);
+    }
+
+    // Puts a score in the in-memory table if it beats the profile's best; true if it did
+    private boolean apply(String name, byte[] key, int score) throws IOException {
+        Pending entry = pending.get(name);
+        if (entry == null) {
+            int row = findRow(key);
+            if (row >= 0) {
+                int segmentScore = readScore(row);
+                if (score <= segmentScore) {
+                    return false;
+                }
+                staleScores = insertSorted(staleScores, staleCount++, segmentScore);
+            }
+            entry = new Pending(name, key, row);
+            pending.put(name, entry);
+        } else if (score <= entry.score) {
+            return false;
+        } else {
+            removeSorted(pendingScores, pendingCount--, entry.score);
+        }
+        entry.score = score;
+        pendingScores = insertSorted(pendingScores, pendingCount++, score);
+        topCache = null;
+        return true;
+    }
+
+    // The profile's best score, or NO_SCORE if it has never played this mode
+    public synchronized int getBest(String name) throws IOException {
+        name = normalizeName(name);
+        Pending entry = pending.get(name);
+        if (entry != null) {
+            return entry.score;
+        }
+        int row = findRow(name.getBytes(StandardCharsets.UTF_8));
+        return row >= 0 ? readScore(row) : NO_SCORE;
+    }
+
+    // The profile's place on the board, from 1, or 0 if it has never played this mode
+    public synchronized int getRank(String name) throws IOException {
+        int best = getBest(name);
+        return best == NO_SCORE ? 0 : rankOf(best);
+    }
+
+    // The place a score would take: one more than the number of profiles with a better best
+    public synchronized int rankOf(int score) throws IOException {
+        int lo = 0, hi = count; // first segment row not above score
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (readScore(mid) > score) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int pendingAbove = pendingCount - upperBound(pendingScores, pendingCount, score);
+        int staleAbove = staleCount - upperBound(staleScores, staleCount, score);
+        return 1 + lo + pendingAbove - staleAbove;
+    }
+
+    public synchronized int getProfileCount() {
+        return count + pendingCount - staleCount;
+    }
+
+    // The best k profiles, best first; equal scores are ordered by name
+    public synchronized List<Entry> top(int k) throws IOException {
+        if (k <= TOP_CACHE_SIZE && topCache != null) {
+            return topCache.subList(0, Math.min(k, topCache.size()));
+        }
+        int limit = Math.max(k, TOP_CACHE_SIZE);
+        Pending[] sorted = pending.values().toArray(new Pending[0]);
+        Arrays.sort(sorted, BY_SCORE);
+        List<Entry> result = new ArrayList<>(Math.min(limit, getProfileCount()));
+        int row = 0, next = 0;
+        while (result.size() < limit && (row < count || next < sorted.length)) {
+            if (row < count) {
+                byte[] key = readKey(row);
+                String name = new String(key, StandardCharsets.UTF_8);
+                int score = readScore(row);
+                if (pending.containsKey(name)) {
+                    row++; // superseded by a pending best
+                    continue;
+                }
+                if (next == sorted.length || precedes(score, key, sorted[next].score, sorted[next].key)) {
+                    result.add(new Entry(name, score));
+                    row++;
+                    continue;
+                }
+            }
+            result.add(new Entry(sorted[next].name, sorted[next].score));
+            next++;
+        }
+        result = List.copyOf(result);
+        if (k <= TOP_CACHE_SIZE) {
+            topCache = result;
+        }
+        return result.subList(0, Math.min(k, result.size()));
+    }
+
+    // Merges the pending bests into a new segment and empties the log
+    private void compact() throws IOException {
+        Pending[] byScore = pending.values().toArray(new Pending[0]);
+        Arrays.sort(byScore, BY_SCORE);
+        Pending[] byName = byScore.clone();
+        Arrays.sort(byName, BY_NAME);
+        int[] newRow = new int[count]; // -1 for rows superseded by a pending best
+        for (Pending entry : byScore) {
+            if (entry.segmentRow >= 0) {
+                newRow[entry.segmentRow] = -1;
+            }
+        }
+        int total = getProfileCount();
+        try {
+            SaveFile.writeAtomically(segmentFile, channel -> {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.put(header(total).flip());
+                int row = 0, next = 0;
+                for (int out = 0; out < total; out++) {
+                    while (row < count && newRow[row] < 0) {
+                        row++;
+                    }
+                    if (buffer.remaining() < RECORD_BYTES) {
+                        drain(channel, buffer);
+                    }
+                    if (row < count && (next == byScore.length
+                            || precedes(readScore(row), readKey(row), byScore[next].score, byScore[next].key))) {
+                        putRecord(buffer, readKey(row), readScore(row));
+                        newRow[row++] = out;
+                    } else {
+                        putRecord(buffer, byScore[next].key, byScore[next].score);
+                        byScore[next++].newRow = out;
+                    }
+                }
+                int index = 0;
+                next = 0;
+                for (int out = 0; out < total; out++) {
+                    while (index < count && newRow[rowAtName(index)] < 0) {
+                        index++;
+                    }
+                    if (buffer.remaining() < 4) {
+                        drain(channel, buffer);
+                    }
+                    if (index < count && (next == byName.length
+                            || Arrays.compareUnsigned(readKey(rowAtName(index)), byName[next].key) < 0)) {
+                        buffer.putInt(newRow[rowAtName(index++)]);
+                    } else {
+                        buffer.putInt(byName[next++].newRow);
+                    }
+                }
+                drain(channel, buffer);
+                segment.close(); // so the rename can replace it on every platform
+            });
+        } finally {
+            openSegment(); // the new segment, or the old one again if the merge failed
+        }
+        pending.clear();
+        pendingCount = 0;
+        staleCount = 0;
+        topCache = null;
+        log.truncate(0);
+        log.position(0);
+        log.force(true);
+    }
+
+    private void openSegment() throws IOException {
+        if (segment != null) {
+            segment.close();
+        }
+        pages.clear();
+        segment = FileChannel.open(segmentFile, StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining() && segment.read(header, header.position()) >= 0) {
+            // keep reading until the header is in
+        }
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+            throw new IOException("Not a leaderboard: " + segmentFile);
+        }
+        short version = header.getShort();
+        short recordBytes = header.getShort();
+        if (version != VERSION || recordBytes != RECORD_BYTES) {
+            throw new IOException("Unsupported leaderboard version " + version + ": " + segmentFile);
+        }
+        count = header.getInt();
+        indexOffset = HEADER_BYTES + (long) count * RECORD_BYTES;
+        if (count < 0 || segment.size() != indexOffset + (long) count * 4) {
+            throw new IOException("Truncated leaderboard: " + segmentFile);
+        }
+    }
+
+    private static ByteBuffer header(int count) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_BYTES).putInt(count);
+        return header.position(HEADER_BYTES);
+    }
+
+    private static void putRecord(ByteBuffer out, byte[] key, int score) {
+        out.putInt(score);
+        out.put((byte) key.length);
+        out.put(key);
+        out.position(out.position() + NAME_BYTES - key.length);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Segment access, a page at a time. Records and index entries never straddle a page.
+    private ByteBuffer page(long offset) throws IOException {
+        long number = offset / PAGE_BYTES;
+        ByteBuffer page = pages.get(number);
+        if (page == null) {
+            page = ByteBuffer.allocate(PAGE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            long start = number * PAGE_BYTES;
+            while (page.hasRemaining() && segment.read(page, start + page.position()) >= 0) {
+                // the last page may be short
+            }
+            pages.put(number, page);
+        }
+        return page;
+    }
+
+    private int readScore(int row) throws IOException {
+        long offset = HEADER_BYTES + (long) row * RECORD_BYTES;
+        return page(offset).getInt((int) (offset % PAGE_BYTES));
+    }
+
+    private byte[] readKey(int row) throws IOException {
+        long offset = HEADER_BYTES + (long) row * RECORD_BYTES;
+        ByteBuffer page = page(offset);
+        int at = (int) (offset % PAGE_BYTES) + 4;
+        byte[] key = new byte[page.get(at) & 0xFF];
+        page.get(at + 1, key);
+        return key;
+    }
+
+    private int rowAtName(int index) throws IOException {
+        long offset = indexOffset + (long) index * 4;
+        return page(offset).getInt((int) (offset % PAGE_BYTES));
+    }
+
+    // The segment row holding the name, or -1
+    private int findRow(byte[] key) throws IOException {
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int row = rowAtName(mid);
+            int order = Arrays.compareUnsigned(readKey(row), key);
+            if (order < 0) {
+                lo = mid + 1;
+            } else if (order > 0) {
+                hi = mid - 1;
+            } else {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    // Board order: higher score first, then name
+    private static boolean precedes(int score, byte[] key, int otherScore, byte[] otherKey) {
+        return score != otherScore ? score > otherScore : Arrays.compareUnsigned(key, otherKey) < 0;
+    }
+
+    // First index in a[0, n) holding a value above 'value'
+    private static int upperBound(int[] a, int n, int value) {
+        int lo = 0, hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] <= value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int[] insertSorted(int[] a, int n, int value) {
+        if (n == a.length) {
+            a = Arrays.copyOf(a, n * 2);
+        }
+        int at = upperBound(a, n, value);
+        System.arraycopy(a, at, a, at + 1, n - at);
+        a[at] = value;
+        return a;
+    }
+
+    private static void removeSorted(int[] a, int n, int value) {
+        int at = upperBound(a, n, value) - 1; // the last copy of value
+        System.arraycopy(a, at + 1, a, at, n - at - 1);
+    }
+}
@@ -0,0 +1,213 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+
+// One player's connection to a MatchServer. Non-blocking once connected: poll()
+// applies whatever the server has sent so far and never waits, so the game loop can
+// call it every step. Keeps the last two ticks' target positions, for drawing in
+// between them, and tells the server which view each click was made on.
+public class MatchClient implements Closeable {
+    private static final int CONNECT_TIMEOUT_MILLIS = 3000;
+
+    private final SocketChannel channel;
+    private final ByteBuffer in = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer out = ByteBuffer.allocate(4 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+    private int playerId = -1; // until welcomed
+    private long tick = -1;
+    private int targetWidth, targetHeight;
+    private int count;
+    private int[] x = new int[0], y = new int[0];
+    private int[] previousX = new int[0], previousY = new int[0];
+    private byte[] image = new byte[0];
+    private int points;
+    private long rounds; // respawns seen, counting the welcome
+
+    private MatchClient(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    public static MatchClient connect(InetSocketAddress server) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.socket().connect(server, CONNECT_TIMEOUT_MILLIS);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new MatchClient(channel);
+    }
+
+    // "host", "host:port" or ":port"
+    public static InetSocketAddress parseAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        String host = colon < 0 ? address : address.substring(0, colon);
+        int port = colon < 0 ? MatchServer.DEFAULT_PORT : Integer.parseInt(address.substring(colon + 1));
+        return new InetSocketAddress(host.isEmpty() ? "localhost" : host, port);
+    }
+
+    // Applies every complete message received so far, then sends anything still queued.
+    // Throws if the server has gone away or sent something malformed.
+    public void poll() throws IOException {
+        int read;
+        while ((read = channel.read(in)) > 0) {
+            in.flip();
+            parse();
+            in.compact();
+        }
+        if (read < 0) {
+            throw new IOException("Match server closed the connection");
+        }
+        flush();
+    }
+
+    private void parse() throws IOException {
+        while (in.remaining() >= 2) {
+            int length = in.getShort(in.position()) & 0xFFFF;
+            if (in.remaining() < 2 + length) {
+                return;
+            }
+            int end = in.position() + 2 + length;
+            in.position(in.position() + 2);
+            byte type = in.get();
+            switch (type) {
+                case MatchServer.WELCOME -> readWelcome();
+                case MatchServer.STATE -> readState();
+                case MatchServer.SCORE -> readScore();
+                default -> throw new IOException("Unknown message " + type);
+            }
+            if (in.position() != end) {
+                throw new IOException("Malformed message " + type);
+            }
+        }
+    }
+
+    private void readWelcome() {
+        playerId = in.get() & 0xFF;
+        tick = in.getInt() & 0xFFFFFFFFL;
+        targetWidth = in.getShort();
+        targetHeight = in.getShort();
+        count = in.getShort() & 0xFFFF;
+        x = new int[count];
+        y = new int[count];
+        previousX = new int[count];
+        previousY = new int[count];
+        image = new byte[count];
+        for (int i = 0; i < count; i++) {
+            image[i] = in.get();
+            x[i] = previousX[i] = in.getShort();
+            y[i] = previousY[i] = in.getShort();
+        }
+        rounds++;
+    }
+
+    private void readState() throws IOException {
+        tick = in.getInt() & 0xFFFFFFFFL;
+        System.arraycopy(x, 0, previousX, 0, count);
+        System.arraycopy(y, 0, previousY, 0, count);
+        int entries = in.getShort() & 0xFFFF;
+        boolean respawned = false;
+        for (int e = 0; e < entries; e++) {
+            int index = in.getShort() & 0xFFFF;
+            int i = index & ~MatchServer.FULL;
+            if (i >= count) {
+                throw new IOException("Target " + i + " out of range");
+            }
+            if ((index & MatchServer.FULL) != 0) {
+                x[i] = previousX[i] = in.getShort(); // jumps straight there
+                y[i] = previousY[i] = in.getShort();
+                respawned = true;
+            } else {
+                x[i] += in.get();
+                y[i] += in.get();
+            }
+        }
+        if (respawned) {
+            rounds++;
+        }
+    }
+
+    private void readScore() {
+        int player = in.get() & 0xFF;
+        int scored = in.getInt();
+        in.getInt(); // the tick it was resolved on
+        if (player == playerId) {
+            points = scored;
+        }
+    }
+
+    // A click on the view viewFraction/VIEW_FRACTIONS of the way from the tick before the
+    // latest to the latest; the server decides whether it hit
+    public void click(int viewFraction, int clickX, int clickY) throws IOException {
+        if (playerId < 0) {
+            return; // nothing on screen to have clicked on yet
+        }
+        if (out.remaining() < 2 + MatchServer.CLICK_BYTES) {
+            return; // the server isn't reading; the click is lost like a dropped packet
+        }
+        out.putShort((short) MatchServer.CLICK_BYTES);
+        out.put(MatchServer.CLICK).putInt((int) tick).put((byte) viewFraction)
+                .putShort((short) clickX).putShort((short) clickY);
+        flush();
+    }
+
+    private void flush() throws IOException {
+        if (out.position() > 0) {
+            out.flip();
+            channel.write(out);
+            out.compact();
+        }
+    }
+
+    public int getViewX(int i, int viewFraction) {
+        return previousX[i] + (x[i] - previousX[i]) * viewFraction / Simulation.VIEW_FRACTIONS;
+    }
+
+    public int getViewY(int i, int viewFraction) {
+        return previousY[i] + (y[i] - previousY[i]) * viewFraction / Simulation.VIEW_FRACTIONS;
+    }
+
+    public boolean isJoined() {
+        return playerId >= 0;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public int getTargetCount() {
+        return count;
+    }
+
+    public int getImage(int i) {
+        return image[i];
+    }
+
+    public int getTargetWidth() {
+        return targetWidth;
+    }
+
+    public int getTargetHeight() {
+        return targetHeight;
+    }
+
+    // This player's score, as the server last reported it
+    public int getPoints() {
+        return points;
+    }
+
+    public long getRounds() {
+        return rounds;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
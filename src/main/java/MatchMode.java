@@ -0,0 +1,151 @@
+import java.awt.*;
+import java.io.IOException;
+
+// A match on a MatchServer, seen from one player: draws the field the server sends
+// and forwards clicks to it instead of simulating a HardMode here. Whether a click
+// hit is only known once the server has resolved it, so onClick always misses and
+// the score arrives through getPoints().
+public class MatchMode implements GameMode {
+    private final MatchClient client;
+    private final long stepNanos;
+    private ImageCache.Sprite[] sprites;
+    private long gameTimeNanos;
+    private int viewFraction;
+    private long roundStartTime;
+    private long drawnRounds;
+    private boolean disconnected;
+
+    // Where each target was when damage was last collected
+    private int[] drawnX = new int[0], drawnY = new int[0];
+
+    // stepNanos is the game loop's step, which the view fraction is measured in
+    public MatchMode(MatchClient client, long stepNanos) {
+        this.client = client;
+        this.stepNanos = stepNanos;
+    }
+
+    @Override
+    public String getName() {
+        return "match";
+    }
+
+    @Override
+    public void start(long gameTimeNanos) {
+        this.gameTimeNanos = gameTimeNanos;
+        roundStartTime = gameTimeNanos;
+    }
+
+    @Override
+    public void dispose() {
+        try {
+            client.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void update(long gameTimeNanos) {
+        this.gameTimeNanos = gameTimeNanos;
+        if (disconnected) {
+            return;
+        }
+        poll();
+        if (client.getRounds() != drawnRounds) {
+            drawnRounds = client.getRounds();
+            roundStartTime = gameTimeNanos;
+        }
+        if (sprites == null && client.isJoined()) {
+            ImageCache imageCache = ImageCache.shared();
+            sprites = new ImageCache.Sprite[HardMode.IMAGES.length];
+            for (int image = 0; image < sprites.length; image++) {
+                sprites[image] = imageCache.sprite(HardMode.IMAGES[image], client.getTargetWidth(), client.getTargetHeight());
+            }
+        }
+    }
+
+    // The server plays on while the menu is open, so its updates still have to be read or
+    // they pile up until it drops this client
+    @Override
+    public void updatePaused() {
+        if (!disconnected) {
+            poll();
+        }
+    }
+
+    private void poll() {
+        try {
+            client.poll();
+        } catch (IOException e) {
+            System.err.println("Left the match: " + e.getMessage());
+            disconnected = true;
+        }
+    }
+
+    // The view runs between the two latest ticks from the server as the loop's view runs
+    // between its last two steps
+    @Override
+    public void setViewTime(long viewTimeNanos) {
+        long sinceStep = viewTimeNanos - (gameTimeNanos - stepNanos);
+        viewFraction = (int) Math.max(0, Math.min(Simulation.VIEW_FRACTIONS - 1,
+                sinceStep * Simulation.VIEW_FRACTIONS / stepNanos));
+    }
+
+    @Override
+    public void render(Graphics g) {
+        if (sprites == null) {
+            return;
+        }
+        int count = client.getTargetCount();
+        for (int i = 0; i < count; i++) {
+            sprites[client.getImage(i)].draw(g, client.getViewX(i, viewFraction), client.getViewY(i, viewFraction));
+        }
+    }
+
+    @Override
+    public void collectDamage(DirtyRegion region) {
+        int count = client.getTargetCount();
+        if (drawnX.length != count) {
+            drawnX = new int[count];
+            drawnY = new int[count];
+            region.markFull();
+        }
+        for (int i = 0; i < count; i++) {
+            int x = client.getViewX(i, viewFraction), y = client.getViewY(i, viewFraction);
+            if (x != drawnX[i] || y != drawnY[i]) {
+                region.addMove(drawnX[i], drawnY[i], x, y, client.getTargetWidth(), client.getTargetHeight());
+                drawnX[i] = x;
+                drawnY[i] = y;
+            }
+        }
+    }
+
+    @Override
+    public int onClick(int x, int y) {
+        if (!disconnected) {
+            try {
+                client.click(viewFraction, x, y);
+            } catch (IOException e) {
+                System.err.println("Left the match: " + e.getMessage());
+                disconnected = true;
+            }
+        }
+        return MISS;
+    }
+
+    // This player's score as the server last reported it
+    public int getPoints() {
+        return client.getPoints();
+    }
+
+    @Override
+    public long getRoundStartTime() {
+        return roundStartTime;
+    }
+
+    // The server owns the match, so it can't be saved
+    @Override
+    public int getStateSize() {
+        return 0;
+    }
+}
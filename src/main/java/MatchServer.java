@@ -0,0 +1,583 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+// Head-to-head matches on a LAN: every player shoots at one hard mode field, which
+// only the server simulates. A single thread runs a selector and steps the field at
+// a fixed tick rate; after each tick the positions that changed are encoded once and
+// the same bytes are written to every client.
+//
+// Clients draw the field between the last two ticks they received and say, with
+// every click, which tick and how far past it they were showing. The server keeps a
+// short history of positions and tests the click against exactly that view, so a
+// player's latency doesn't decide whether they hit. Who hit first is decided by those
+// claimed view times, not by arrival: a claim may be at most REWIND_TICKS old, so
+// clicks are held until every click that could claim an earlier view has arrived,
+// then resolved in order. The first hit scores and respawns the field; later clicks
+// on the field it replaced miss.
+//
+// Messages are little-endian, each prefixed by an unsigned short length:
+//   WELCOME  byte type, byte player, int tick, short target width, short target
+//            height, short count, then per target byte image, short x, short y
+//   STATE    byte type, int tick, short entries, then per target that moved short
+//            index and byte dx, byte dy, or short (index | FULL) and short x, short y
+//   SCORE    byte type, byte player, int points, int tick
+//   CLICK    byte type, int claimed tick, byte view fraction, short x, short y (client to server)
+public class MatchServer implements Runnable {
+    public static final int DEFAULT_PORT = 47800;
+
+    static final byte WELCOME = 1;
+    static final byte STATE = 2;
+    static final byte SCORE = 3;
+    static final byte CLICK = 4;
+    static final int FULL = 0x8000; // STATE entry with an absolute position
+    static final int CLICK_BYTES = 1 + 4 + 1 + 2 + 2;
+
+    static final int TICK_RATE = 60;
+    static final int REWIND_TICKS = 6; // 100 ms: the oldest view a click may claim
+    private static final int HISTORY_TICKS = 16; // power of two, more than REWIND_TICKS + 1
+    private static final int MAX_PLAYERS = 255; // ids fit a byte
+    private static final int MAX_TARGETS = 4096; // a full update must fit one message
+    private static final int MAX_PENDING_CLICKS = 4096;
+    private static final int OUTBOX_BYTES = 64 * 1024; // a client this far behind is dropped
+    private static final int MAX_FAILED_TICKS = TICK_RATE; // in a row, before the match is given up
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Simulation simulation;
+    private final HardMode field;
+    private final HitMask[] hitMasks = new HitMask[HardMode.IMAGES.length];
+    private final long stepNanos;
+    private volatile boolean running = true;
+
+    private static final class Player {
+        final int id;
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer out = ByteBuffer.allocate(OUTBOX_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        boolean welcomed;
+        int points;
+
+        Player(int id, SocketChannel channel, SelectionKey key) {
+            this.id = id;
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    private final Player[] players = new Player[MAX_PLAYERS];
+    private int playerCount;
+    private int peakPlayers;
+
+    // Position history, by tick modulo HISTORY_TICKS. The round counts respawns, so a
+    // click on a view from an older round is on a field somebody already hit.
+    private final short[] historyX, historyY;
+    private final int[] historyRound = new int[HISTORY_TICKS];
+    private int round;
+
+    // Clicks waiting for their claimed tick to fall out of the rewind window, sorted by
+    // claimed view time (tick << 8 | fraction), ties in arrival order
+    private final long[] pendingView = new long[MAX_PENDING_CLICKS];
+    private final int[] pendingPlayer = new int[MAX_PENDING_CLICKS];
+    private final int[] pendingX = new int[MAX_PENDING_CLICKS];
+    private final int[] pendingY = new int[MAX_PENDING_CLICKS];
+    private int pendingCount;
+
+    // Positions as of the last broadcast, which STATE deltas are relative to
+    private final short[] sentX, sentY;
+    private int sentRound = -1;
+    private final ByteBuffer frame;
+
+    private final LatencyHistogram broadcastCost = new LatencyHistogram(); // encode plus every write, per tick
+    private final LatencyHistogram rewind = new LatencyHistogram(); // how far back each click was tested
+    private long ticks;
+    private long bytesBroadcast;
+    private long hits, lateClicks, droppedClicks, droppedPlayers;
+    private long failedTicks;
+    private int failedTicksInRow;
+
+    public MatchServer(int port, int friendCount, int foeCount, long seed) throws IOException {
+        if (friendCount + foeCount > MAX_TARGETS) {
+            throw new IllegalArgumentException("At most " + MAX_TARGETS + " targets");
+        }
+        simulation = new Simulation(seed, TICK_RATE);
+        stepNanos = simulation.getStepNanos();
+        field = simulation.createHardMode(friendCount, foeCount);
+        simulation.start(field);
+        for (int image = 0; image < hitMasks.length; image++) {
+            hitMasks[image] = ImageCache.shared().sprite(HardMode.IMAGES[image], field.playerWidth, field.playerHeight)
+                    .getHitMask();
+        }
+        int count = field.targets.size();
+        historyX = new short[HISTORY_TICKS * count];
+        historyY = new short[HISTORY_TICKS * count];
+        sentX = new short[count];
+        sentY = new short[count];
+        // Big enough for the largest STATE, every target sent in full, and for a SCORE
+        frame = ByteBuffer.allocate(Math.max(2 + 1 + 4 + 2 + count * (2 + 2 + 2), 2 + 1 + 1 + 4 + 4))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        recordHistory();
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public void run() {
+        long nextTick = System.nanoTime() + stepNanos;
+        try {
+            while (running) {
+                long wait = nextTick - System.nanoTime();
+                if (wait > 0) {
+                    selector.select(Math.max(1, wait / 1_000_000)); // a tick may start up to 1 ms late
+                } else {
+                    selector.selectNow();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+                if (System.nanoTime() - nextTick >= 0) {
+                    runTick();
+                    nextTick += stepNanos;
+                    if (System.nanoTime() - nextTick > 10 * stepNanos) {
+                        nextTick = System.nanoTime(); // far behind: skip ahead rather than burst
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            close(); // disconnects every client, so none waits on a server that has gone
+        }
+    }
+
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void close() {
+        for (Player player : players) {
+            if (player != null) {
+                disconnect(player);
+            }
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        simulation.shutdown();
+    }
+
+    private void handle(SelectionKey key) throws IOException {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        Player player = (Player) key.attachment();
+        try {
+            if (key.isReadable()) {
+                read(player);
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush(player);
+            }
+        } catch (IOException e) {
+            disconnect(player); // reset by the client, or it broke the protocol
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            int id = 0;
+            while (id < MAX_PLAYERS && players[id] != null) {
+                id++;
+            }
+            if (id == MAX_PLAYERS) {
+                channel.close();
+                continue;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            players[id] = new Player(id, channel, key);
+            key.attach(players[id]);
+            playerCount++;
+            peakPlayers = Math.max(peakPlayers, playerCount);
+            // Welcomed at the end of the next tick, with the positions that tick's deltas lead to
+        }
+    }
+
+    private void disconnect(Player player) {
+        player.key.cancel();
+        try {
+            player.channel.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+        players[player.id] = null;
+        playerCount--;
+        // Its clicks still waiting would otherwise score for whoever gets the id next
+        int kept = 0;
+        for (int k = 0; k < pendingCount; k++) {
+            if (pendingPlayer[k] != player.id) {
+                pendingView[kept] = pendingView[k];
+                pendingPlayer[kept] = pendingPlayer[k];
+                pendingX[kept] = pendingX[k];
+                pendingY[kept] = pendingY[k];
+                kept++;
+            }
+        }
+        pendingCount = kept;
+    }
+
+    private void read(Player player) throws IOException {
+        ByteBuffer in = player.in;
+        if (player.channel.read(in) < 0) {
+            throw new IOException("closed by client");
+        }
+        in.flip();
+        while (in.remaining() >= 2) {
+            int length = in.getShort(in.position()) & 0xFFFF;
+            if (length != CLICK_BYTES) {
+                throw new IOException("bad message length " + length);
+            }
+            if (in.remaining() < 2 + length) {
+                break;
+            }
+            in.position(in.position() + 2);
+            if (in.get() != CLICK) {
+                throw new IOException("unexpected message");
+            }
+            long claimedTick = in.getInt() & 0xFFFFFFFFL;
+            int fraction = in.get() & 0xFF;
+            int x = in.getShort(), y = in.getShort();
+            if (player.welcomed) {
+                addClick(player.id, claimedTick, fraction, x, y);
+            }
+        }
+        in.compact();
+    }
+
+    // Timestamps the click on arrival: a claim from the future or older than the rewind
+    // window is moved to the nearest view the server allows
+    private void addClick(int player, long claimedTick, int fraction, int x, int y) {
+        long tick = simulation.getTick();
+        long oldest = Math.max(1, tick - REWIND_TICKS);
+        if (claimedTick > tick) {
+            claimedTick = tick;
+            fraction = 0;
+        } else if (claimedTick < oldest) {
+            claimedTick = oldest;
+            fraction = 0;
+            lateClicks++;
+        }
+        // The claimed view is fraction of the way from the tick before the claimed one
+        rewind.record((tick - claimedTick + 1) * stepNanos - fraction * stepNanos / Simulation.VIEW_FRACTIONS);
+        if (pendingCount == MAX_PENDING_CLICKS) {
+            droppedClicks++;
+            return;
+        }
+        long view = claimedTick << 8 | fraction;
+        int k = pendingCount++;
+        while (k > 0 && pendingView[k - 1] > view) { // mostly arrives in order, so this rarely moves anything
+            pendingView[k] = pendingView[k - 1];
+            pendingPlayer[k] = pendingPlayer[k - 1];
+            pendingX[k] = pendingX[k - 1];
+            pendingY[k] = pendingY[k - 1];
+            k--;
+        }
+        pendingView[k] = view;
+        pendingPlayer[k] = player;
+        pendingX[k] = x;
+        pendingY[k] = y;
+    }
+
+    // A bug that breaks one tick shouldn't end everyone's match: the tick is dropped and
+    // the next one runs. One that keeps failing stops the server, which closes every client.
+    private void runTick() throws IOException {
+        try {
+            tick();
+            failedTicksInRow = 0;
+        } catch (RuntimeException e) {
+            failedTicks++;
+            e.printStackTrace();
+            if (++failedTicksInRow >= MAX_FAILED_TICKS) {
+                System.err.println("Match server stopping after " + failedTicksInRow + " failed ticks in a row");
+                running = false;
+            }
+        }
+    }
+
+    private void tick() throws IOException {
+        simulation.step();
+        resolveClicks(simulation.getTick() - REWIND_TICKS);
+        simulation.setViewFraction(Simulation.VIEW_FRACTIONS); // send where targets are at this tick
+        recordHistory();
+        long started = System.nanoTime();
+        broadcastState();
+        broadcastCost.record(System.nanoTime() - started);
+        for (Player player : players) {
+            if (player != null && !player.welcomed) {
+                welcome(player);
+            }
+        }
+        ticks++;
+    }
+
+    private void recordHistory() {
+        int count = field.targets.size();
+        int slot = (int) (simulation.getTick() & (HISTORY_TICKS - 1));
+        for (int i = 0; i < count; i++) {
+            historyX[slot * count + i] = (short) field.viewX(i);
+            historyY[slot * count + i] = (short) field.viewY(i);
+        }
+        historyRound[slot] = round;
+    }
+
+    // Resolves, in claimed view order, every click whose view is at or before the given tick
+    private void resolveClicks(long settledTick) throws IOException {
+        int resolved = 0;
+        while (resolved < pendingCount && pendingView[resolved] >>> 8 <= settledTick) {
+            resolveClick(pendingPlayer[resolved], pendingView[resolved], pendingX[resolved], pendingY[resolved]);
+            resolved++;
+        }
+        if (resolved > 0) {
+            pendingCount -= resolved;
+            System.arraycopy(pendingView, resolved, pendingView, 0, pendingCount);
+            System.arraycopy(pendingPlayer, resolved, pendingPlayer, 0, pendingCount);
+            System.arraycopy(pendingX, resolved, pendingX, 0, pendingCount);
+            System.arraycopy(pendingY, resolved, pendingY, 0, pendingCount);
+        }
+    }
+
+    private void resolveClick(int id, long view, int clickX, int clickY) throws IOException {
+        Player player = players[id];
+        long tick = view >>> 8;
+        int fraction = (int) (view & 0xFF);
+        int slot = (int) (tick & (HISTORY_TICKS - 1));
+        int previousSlot = (int) ((tick - 1) & (HISTORY_TICKS - 1));
+        if (player == null || historyRound[slot] != round) {
+            return; // the field that player saw was already hit
+        }
+        boolean respawned = historyRound[previousSlot] != historyRound[slot]; // nothing to slide from
+        int count = field.targets.size();
+        // Top-most first, as drawn
+        for (int i = count - 1; i >= 0; i--) {
+            int x = historyX[slot * count + i], y = historyY[slot * count + i];
+            if (!respawned) {
+                int fromX = historyX[previousSlot * count + i], fromY = historyY[previousSlot * count + i];
+                x = fromX + (x - fromX) * fraction / Simulation.VIEW_FRACTIONS;
+                y = fromY + (y - fromY) * fraction / Simulation.VIEW_FRACTIONS;
+            }
+            if (hitMasks[field.targets.image[i]].contains(clickX - x, clickY - y)) {
+                player.points += field.targets.getPoints(i);
+                field.respawnPlayers();
+                round++;
+                hits++;
+                broadcastScore(player);
+                return;
+            }
+        }
+    }
+
+    private void broadcastScore(Player scorer) throws IOException {
+        frame.clear();
+        frame.putShort((short) (1 + 1 + 4 + 4));
+        frame.put(SCORE).put((byte) scorer.id).putInt(scorer.points).putInt((int) simulation.getTick());
+        frame.flip();
+        broadcast();
+    }
+
+    private void broadcastState() throws IOException {
+        int count = field.targets.size();
+        int slot = (int) (simulation.getTick() & (HISTORY_TICKS - 1));
+        boolean full = sentRound != round;
+        frame.clear();
+        frame.position(2);
+        frame.put(STATE).putInt((int) simulation.getTick());
+        int entriesAt = frame.position();
+        frame.putShort((short) 0);
+        int entries = 0;
+        for (int i = 0; i < count; i++) {
+            short x = historyX[slot * count + i], y = historyY[slot * count + i];
+            int dx = x - sentX[i], dy = y - sentY[i];
+            if (!full && dx == 0 && dy == 0) {
+                continue;
+            }
+            if (!full && dx >= Byte.MIN_VALUE && dx <= Byte.MAX_VALUE && dy >= Byte.MIN_VALUE && dy <= Byte.MAX_VALUE) {
+                frame.putShort((short) i).put((byte) dx).put((byte) dy);
+            } else {
+                frame.putShort((short) (i | FULL)).putShort(x).putShort(y);
+            }
+            sentX[i] = x;
+            sentY[i] = y;
+            entries++;
+        }
+        sentRound = round;
+        frame.putShort(entriesAt, (short) entries);
+        frame.putShort(0, (short) (frame.position() - 2));
+        frame.flip();
+        broadcast();
+    }
+
+    // Writes the frame to every welcomed player: straight to the socket while its outbox is
+    // empty, so the common case copies nothing, else behind what is already queued
+    private void broadcast() {
+        int length = frame.limit();
+        for (Player player : players) {
+            if (player == null || !player.welcomed) {
+                continue;
+            }
+            try {
+                frame.position(0);
+                if (player.out.position() == 0) {
+                    player.channel.write(frame);
+                }
+                if (frame.hasRemaining()) {
+                    enqueue(player, frame);
+                }
+                bytesBroadcast += length;
+            } catch (IOException e) {
+                disconnect(player);
+            }
+        }
+    }
+
+    private void enqueue(Player player, ByteBuffer data) throws IOException {
+        if (data.remaining() > player.out.remaining()) {
+            droppedPlayers++;
+            throw new IOException("client too slow");
+        }
+        player.out.put(data);
+        player.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    private void flush(Player player) throws IOException {
+        ByteBuffer out = player.out;
+        out.flip();
+        player.channel.write(out);
+        out.compact();
+        if (out.position() == 0) {
+            player.key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void welcome(Player player) {
+        int count = field.targets.size();
+        ByteBuffer message = ByteBuffer.allocate(2 + 1 + 1 + 4 + 2 + 2 + 2 + count * 5)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        message.putShort((short) (message.capacity() - 2));
+        message.put(WELCOME).put((byte) player.id).putInt((int) simulation.getTick());
+        message.putShort((short) field.playerWidth).putShort((short) field.playerHeight).putShort((short) count);
+        for (int i = 0; i < count; i++) {
+            message.put((byte) field.targets.image[i]).putShort(sentX[i]).putShort(sentY[i]);
+        }
+        message.flip();
+        try {
+            player.channel.write(message);
+            if (message.hasRemaining()) {
+                enqueue(player, message);
+            }
+            player.welcomed = true;
+        } catch (IOException e) {
+            disconnect(player);
+        }
+    }
+
+    // Read it once the server has stopped
+    public String getReport() {
+        long perTick = ticks == 0 ? 0 : bytesBroadcast / ticks;
+        return String.format("%d ticks, up to %d players: broadcast p50 %.1f us, p99 %.1f us, max %.1f us, %d bytes/tick"
+                        + "; %d hits, click rewind p50 %.1f ms, p99 %.1f ms; %d late, %d dropped clicks, %d dropped players"
+                        + "; %d failed ticks",
+                ticks, peakPlayers, broadcastCost.getPercentile(50) / 1e3, broadcastCost.getPercentile(99) / 1e3,
+                broadcastCost.getMax() / 1e3, perTick, hits, rewind.getPercentile(50) / 1e6,
+                rewind.getPercentile(99) / 1e6, lateClicks, droppedClicks, droppedPlayers, failedTicks);
+    }
+
+    // java MatchServer [port [friends foes [bots seconds]]]
+    // With bots, also connects that many clients over loopback that click at random
+    // targets, and prints the server's per-tick cost when the time is up.
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int friends = args.length > 2 ? Integer.parseInt(args[1]) : 1;
+        int foes = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int bots = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+        MatchServer server = new MatchServer(port, friends, foes, 42L);
+        Thread serverThread = new Thread(server, "match-server");
+        serverThread.start();
+        System.out.println("Match server on port " + server.getPort());
+        if (bots == 0) {
+            serverThread.join();
+            return;
+        }
+
+        MatchClient[] clients = new MatchClient[bots];
+        for (int b = 0; b < bots; b++) {
+            clients[b] = MatchClient.connect(new InetSocketAddress("localhost", server.getPort()));
+        }
+        Random random = new Random(7);
+        long clicks = 0;
+        long stepNanos = 1_000_000_000L / TICK_RATE;
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        for (long next = System.nanoTime(); next - end < 0; next += stepNanos) {
+            for (MatchClient client : clients) {
+                client.poll();
+                int count = client.getTargetCount();
+                // About one click per bot every half second, aimed somewhere on a target's box
+                if (count > 0 && random.nextInt(TICK_RATE / 2) == 0) {
+                    int i = random.nextInt(count);
+                    int fraction = random.nextInt(Simulation.VIEW_FRACTIONS);
+                    client.click(fraction, client.getViewX(i, fraction) + random.nextInt(client.getTargetWidth()),
+                            client.getViewY(i, fraction) + random.nextInt(client.getTargetHeight()));
+                    clicks++;
+                }
+            }
+            long sleep = next + stepNanos - System.nanoTime();
+            if (sleep > 0) {
+                Thread.sleep(sleep / 1_000_000, (int) (sleep % 1_000_000));
+            }
+        }
+        int[] points = new int[bots];
+        for (int b = 0; b < bots; b++) {
+            clients[b].poll();
+            points[b] = clients[b].getPoints();
+        }
+        for (MatchClient client : clients) {
+            client.close();
+        }
+        server.stop();
+        serverThread.join();
+        System.out.println(server.getReport());
+        System.out.println(clicks + " clicks sent; bot points " + Arrays.toString(points));
+    }
+}
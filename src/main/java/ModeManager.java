@@ -0,0 +1,85 @@
+// Owns the active GameMode, the mode clock and the event scheduler the modes share.
+// Switching modes always disposes the previous one and cancels anything it left
+// scheduled, so restarting a session never leaks timers.
+public class ModeManager {
+    private final EventScheduler scheduler = new EventScheduler(1_000_000L, 1024, 64);
+    private GameMode current;
+    private boolean paused;
+    private long lastGameTime = -1;
+    private long modeTime;
+
+    public void switchTo(GameMode next) {
+        if (current != null) {
+            current.dispose();
+            if (current instanceof EventScheduler.Handler handler) {
+                scheduler.cancelAll(handler); // in case the mode forgot anything
+            }
+        }
+        current = next;
+        if (next != null) {
+            next.start(modeTime);
+            if (paused) {
+                next.pause();
+            }
+        }
+    }
+
+    // Switches to a mode restored from a save, putting the mode clock back to the time
+    // the save was taken so scheduled events keep exactly the same timing
+    public void restore(GameMode next, long savedModeTime) {
+        switchTo(null);
+        modeTime = savedModeTime;
+        scheduler.reset(savedModeTime);
+        switchTo(next);
+    }
+
+    // Called every game loop step with the loop's clock
+    public void update(long gameTimeNanos) {
+        long elapsed = lastGameTime < 0 ? 0 : gameTimeNanos - lastGameTime;
+        lastGameTime = gameTimeNanos;
+        if (current == null) {
+            return;
+        }
+        if (paused) {
+            current.updatePaused();
+            return;
+        }
+        modeTime += elapsed;
+        scheduler.advance(modeTime);
+        current.update(modeTime);
+    }
+
+    public void setPaused(boolean paused) {
+        if (this.paused == paused) {
+            return;
+        }
+        this.paused = paused;
+        if (current != null) {
+            if (paused) {
+                current.pause();
+            } else {
+                current.resume(modeTime);
+            }
+        }
+    }
+
+    public int onClick(int x, int y) {
+        return current == null || paused ? GameMode.MISS : current.onClick(x, y);
+    }
+
+    public void shutdown() {
+        switchTo(null);
+    }
+
+    public GameMode getCurrent() {
+        return current;
+    }
+
+    public EventScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public long getModeTime() {
+        return modeTime;
+    }
+}
@@ -0,0 +1,292 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Hands out spawn and destination points from a precomputed Poisson-disk (Bridson)
+// pool, so candidates are already well spread and most of them pass the spacing
+// check on the first try. Each placement tries at most MAX_ATTEMPTS candidates and
+// all placements in one frame share FRAME_BUDGET attempts; if nothing fits, the
+// area is reported as saturated instead of spinning.
+public class PlacementSampler {
+    public static final int MAX_ATTEMPTS = 32;
+    public static final int FRAME_BUDGET = 4096;
+    private static final int BRIDSON_TRIES = 30;
+
+    private static final ExecutorService REFILL = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "placement-refill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int minX, minY, width, height, minDistance;
+    private final Random random;
+    private final boolean backgroundRefill;
+
+    private int[] pool;          // packed x, y pairs relative to (minX, minY)
+    private int cursor;          // next unused pair in pool
+    private volatile int[] nextPool;
+    private int[] savedNextPool; // nextPool as of getStateSize(), which writeState() writes
+    private boolean refillPending;
+    private volatile int refillGeneration; // lets readState() discard a refill still in flight
+
+    private int x, y;
+    private int budget = FRAME_BUDGET;
+    private int lastAttempts;
+    private boolean saturated;
+
+    // Candidates are drawn from [minX, minX + width) x [minY, minY + height)
+    public PlacementSampler(int minX, int minY, int width, int height, int minDistance, Random random,
+                            boolean backgroundRefill) {
+        this.minX = minX;
+        this.minY = minY;
+        this.width = Math.max(1, width);
+        this.height = Math.max(1, height);
+        this.minDistance = minDistance;
+        this.random = random;
+        this.backgroundRefill = backgroundRefill;
+        pool = generate(this.width, this.height, minDistance, random.nextLong());
+        requestRefill();
+    }
+
+    // Finds a point at least minDistance from every anchor in 'spacing' and not equal to any
+    // anchor in 'distinct' (either may be null), ignoring item 'exclude'. On success the point
+    // is available from getX()/getY(); on failure they still hold an in-bounds, unchecked point.
+    public boolean place(SpatialGrid spacing, SpatialGrid distinct, int exclude) {
+        GameEvents.Placement event = GameEvents.beginPlacement();
+        boolean placed = search(spacing, distinct, exclude);
+        if (event != null && event.shouldCommit()) {
+            event.target = exclude;
+            event.attempts = lastAttempts;
+            event.placed = placed;
+            event.commit();
+        }
+        return placed;
+    }
+
+    private boolean search(SpatialGrid spacing, SpatialGrid distinct, int exclude) {
+        int attempt = 0;
+        while (attempt < MAX_ATTEMPTS && budget > 0) {
+            attempt++;
+            budget--;
+            nextCandidate();
+            if ((spacing == null || !spacing.anyWithin(x, y, minDistance, exclude))
+                    && (distinct == null || !distinct.anyAt(x, y, exclude))) {
+                lastAttempts = attempt;
+                saturated = false;
+                return true;
+            }
+        }
+        if (attempt == 0) {
+            nextCandidate();
+        }
+        lastAttempts = attempt;
+        if (!saturated) {
+            saturated = true;
+            GameEvents.Saturated event = GameEvents.beginSaturated();
+            if (event != null && event.shouldCommit()) {
+                event.target = exclude;
+                event.minDistance = minDistance;
+                event.commit();
+            }
+        }
+        return false;
+    }
+
+    // Save support: the pools and the position in them, so a restored sampler hands out
+    // the same points the original would have. A refill may land at any time, so the size
+    // takes a snapshot of the ready pool and the next writeState() writes that snapshot.
+    public int getStateSize() {
+        savedNextPool = nextPool;
+        return 4 + 4 + pool.length * 4 + 4 + (savedNextPool != null ? savedNextPool.length * 4 : 0);
+    }
+
+    public void writeState(ByteBuffer out) {
+        int[] ready = savedNextPool;
+        savedNextPool = null;
+        out.putInt(cursor);
+        out.putInt(pool.length);
+        out.asIntBuffer().put(pool);
+        out.position(out.position() + pool.length * 4);
+        out.putInt(ready != null ? ready.length : -1);
+        if (ready != null) {
+            out.asIntBuffer().put(ready);
+            out.position(out.position() + ready.length * 4);
+        }
+    }
+
+    public void readState(ByteBuffer in) {
+        cursor = in.getInt();
+        pool = readPool(in, in.getInt());
+        int readyLength = in.getInt();
+        refillGeneration++;
+        nextPool = readyLength >= 0 ? readPool(in, readyLength) : null;
+        refillPending = nextPool != null;
+        requestRefill();
+    }
+
+    private static int[] readPool(ByteBuffer in, int length) {
+        if (length < 0 || length % 2 != 0 || length > in.remaining() / 4) {
+            throw new IllegalArgumentException("Corrupt save: bad spawn pool length " + length);
+        }
+        int[] points = new int[length];
+        in.asIntBuffer().get(points);
+        in.position(in.position() + length * 4);
+        return points;
+    }
+
+    // Restores the attempt budget; call once per simulation step
+    public void beginFrame() {
+        budget = FRAME_BUDGET;
+    }
+
+    private void nextCandidate() {
+        if (cursor * 2 >= pool.length) {
+            int[] ready = nextPool;
+            if (ready != null) {
+                nextPool = null;
+                pool = ready;
+                refillPending = false;
+                requestRefill();
+            } else {
+                shuffle(pool); // the next pool is still being built; reuse this one in a new order
+            }
+            cursor = 0;
+        }
+        x = minX + pool[cursor * 2];
+        y = minY + pool[cursor * 2 + 1];
+        cursor++;
+    }
+
+    private void requestRefill() {
+        if (refillPending) {
+            return;
+        }
+        refillPending = true;
+        long seed = random.nextLong();
+        if (backgroundRefill) {
+            int generation = refillGeneration;
+            REFILL.execute(() -> {
+                int[] points = generate(width, height, minDistance, seed);
+                if (generation == refillGeneration) {
+                    nextPool = points;
+                }
+            });
+        } else {
+            nextPool = generate(width, height, minDistance, seed);
+        }
+    }
+
+    private void shuffle(int[] points) {
+        for (int i = points.length / 2 - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tx = points[i * 2], ty = points[i * 2 + 1];
+            points[i * 2] = points[j * 2];
+            points[i * 2 + 1] = points[j * 2 + 1];
+            points[j * 2] = tx;
+            points[j * 2 + 1] = ty;
+        }
+    }
+
+    // Bridson's algorithm, returned as packed x, y pairs in random order
+    static int[] generate(int width, int height, int radius, long seed) {
+        Random random = new Random(seed);
+        double cellSize = radius / Math.sqrt(2);
+        int columns = (int) Math.ceil(width / cellSize);
+        int rows = (int) Math.ceil(height / cellSize);
+        int[] cells = new int[columns * rows];
+        Arrays.fill(cells, -1);
+
+        double[] xs = new double[64], ys = new double[64];
+        int[] active = new int[64];
+        int count = 0, activeCount = 0;
+
+        xs[0] = random.nextDouble() * width;
+        ys[0] = random.nextDouble() * height;
+        cells[(int) (ys[0] / cellSize) * columns + (int) (xs[0] / cellSize)] = 0;
+        active[activeCount++] = count++;
+
+        double minSquared = (double) radius * radius;
+        while (activeCount > 0) {
+            int slot = random.nextInt(activeCount);
+            int origin = active[slot];
+            boolean added = false;
+            for (int k = 0; k < BRIDSON_TRIES && !added; k++) {
+                double angle = random.nextDouble() * 2 * Math.PI;
+                double distance = radius * (1 + random.nextDouble());
+                double cx = xs[origin] + Math.cos(angle) * distance;
+                double cy = ys[origin] + Math.sin(angle) * distance;
+                if (cx < 0 || cy < 0 || cx >= width || cy >= height) {
+                    continue;
+                }
+                int column = (int) (cx / cellSize), row = (int) (cy / cellSize);
+                boolean clear = true;
+                for (int r = Math.max(0, row - 2); r <= Math.min(rows - 1, row + 2) && clear; r++) {
+                    for (int c = Math.max(0, column - 2); c <= Math.min(columns - 1, column + 2); c++) {
+                        int other = cells[r * columns + c];
+                        if (other >= 0) {
+                            double dx = xs[other] - cx, dy = ys[other] - cy;
+                            if (dx * dx + dy * dy < minSquared) {
+                                clear = false;
+                                break;
+                            }
+                        }
+                    }
+                }
+                if (clear) {
+                    if (count == xs.length) {
+                        xs = Arrays.copyOf(xs, count * 2);
+                        ys = Arrays.copyOf(ys, count * 2);
+                    }
+                    if (activeCount == active.length) {
+                        active = Arrays.copyOf(active, activeCount * 2);
+                    }
+                    xs[count] = cx;
+                    ys[count] = cy;
+                    cells[row * columns + column] = count;
+                    active[activeCount++] = count++;
+                    added = true;
+                }
+            }
+            if (!added) {
+                active[slot] = active[--activeCount];
+            }
+        }
+
+        // Emit in random order so consumers can take points sequentially
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        int[] points = new int[count * 2];
+        for (int i = 0; i < count; i++) {
+            points[i * 2] = (int) xs[order[i]];
+            points[i * 2 + 1] = (int) ys[order[i]];
+        }
+        return points;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    // Number of candidates the most recent place() call examined
+    public int getLastAttempts() {
+        return lastAttempts;
+    }
+
+    public boolean isSaturated() {
+        return saturated;
+    }
+}
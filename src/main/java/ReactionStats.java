@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Reaction times for the session: how long after the targets appeared each hit
+// landed, per mode and target type, plus misses per mode. Each category is a
+// LatencyHistogram, so recording a hit never allocates. Recorded on the game loop;
+// the dialogs read a snapshot() taken there, never the live stats.
+public class ReactionStats {
+    public static final int EASY_TARGET = 0;
+    public static final int HARD_FRIEND = 1; // the +1 targets
+    public static final int HARD_FOE = 2;    // the -1 targets
+    public static final int CATEGORIES = 3;
+
+    private static final String[] LABELS = {"Easy", "Hard +1", "Hard -1"};
+    private static final String[] CSV_NAMES = {"easy_target", "hard_friend", "hard_foe"};
+
+    private final LatencyHistogram[] reactions = new LatencyHistogram[CATEGORIES];
+    private long easyMisses;
+    private long hardMisses;
+
+    public ReactionStats() {
+        for (int i = 0; i < CATEGORIES; i++) {
+            reactions[i] = new LatencyHistogram();
+        }
+    }
+
+    // scored is what the click was worth, as returned by GameMode.onClick
+    public void record(GameMode mode, int scored, long reactionNanos) {
+        boolean hard = mode instanceof HardMode;
+        if (scored == GameMode.MISS) {
+            if (hard) {
+                hardMisses++;
+            } else {
+                easyMisses++;
+            }
+        } else {
+            reactions[!hard ? EASY_TARGET : scored > 0 ? HARD_FRIEND : HARD_FOE].record(reactionNanos);
+        }
+    }
+
+    // A copy for another thread to read; call it on the thread that records
+    public ReactionStats snapshot() {
+        ReactionStats copy = new ReactionStats();
+        for (int i = 0; i < CATEGORIES; i++) {
+            copy.reactions[i].copyFrom(reactions[i]);
+        }
+        copy.easyMisses = easyMisses;
+        copy.hardMisses = hardMisses;
+        return copy;
+    }
+
+    public LatencyHistogram get(int category) {
+        return reactions[category];
+    }
+
+    public static String getLabel(int category) {
+        return LABELS[category];
+    }
+
+    public long getEasyMisses() {
+        return easyMisses;
+    }
+
+    public long getHardMisses() {
+        return hardMisses;
+    }
+
+    public void writeCsv(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("target,hits,p10_ms,p50_ms,p90_ms,p99_ms,max_ms");
+            for (int i = 0; i < CATEGORIES; i++) {
+                LatencyHistogram histogram = reactions[i];
+                out.printf("%s,%d,%.1f,%.1f,%.1f,%.1f,%.1f%n", CSV_NAMES[i], histogram.getCount(),
+                        histogram.getPercentile(10) / 1e6, histogram.getPercentile(50) / 1e6,
+                        histogram.getPercentile(90) / 1e6, histogram.getPercentile(99) / 1e6,
+                        histogram.getMax() / 1e6);
+            }
+            out.println("easy_misses," + easyMisses);
+            out.println("hard_misses," + hardMisses);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32C;
+
+// Reads and writes save files. A save is a 14-byte header (magic "TPSV", version,
+// payload length, CRC32C of the payload) followed by Simulation.saveState().
+// Writes go to a temporary file in the same directory, are forced to disk and
+// then renamed over the old save, so a crash leaves either the old save or the
+// new one, never a torn file. All file I/O runs on one background thread.
+public class SaveFile {
+    static final int MAGIC = 0x54505356; // "TPSV"
+    static final short VERSION = 3; // 2: mode clock and spawn pool; 3: previous target positions
+    private static final int HEADER_BYTES = 4 + 2 + 4 + 4;
+
+    private static final ExecutorService IO = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "save-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // ~/Documents/target_practice.sav unless -Dtargetpractice.save says otherwise
+    public static Path defaultPath() {
+        String configured = System.getProperty("targetpractice.save");
+        if (configured != null) {
+            return Path.of(configured);
+        }
+        return Path.of(System.getProperty("user.home"), "Documents", "target_practice.sav");
+    }
+
+    // Completes with the number of bytes written
+    public static CompletableFuture<Long> writeAsync(Path file, ByteBuffer payload) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return write(file, payload);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, IO);
+    }
+
+    public static CompletableFuture<ByteBuffer> readAsync(Path file) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return read(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, IO);
+    }
+
+    public static long write(Path file, ByteBuffer payload) throws IOException {
+        ByteBuffer body = payload.duplicate();
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putShort(VERSION).putInt(body.remaining()).putInt((int) crc.getValue()).flip();
+        long size = header.remaining() + body.remaining();
+        writeAtomically(file, channel -> {
+            ByteBuffer[] parts = {header, body};
+            while (body.hasRemaining()) {
+                channel.write(parts);
+            }
+        });
+        return size;
+    }
+
+    // Writes the contents of a file
+    interface ContentWriter {
+        void write(FileChannel channel) throws IOException;
+    }
+
+    // Writes to a temporary file in the same directory, forces it to disk and renames it
+    // over 'file', so readers only ever see the old contents or the new
+    static void writeAtomically(Path file, ContentWriter writer) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                writer.write(channel);
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Returns the payload, ready for Simulation.loadState()
+    public static ByteBuffer read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a save file: " + file);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading until the whole file is in
+            }
+            buffer.flip();
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a save file: " + file);
+            }
+            short version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported save version " + version + ": " + file);
+            }
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length != buffer.remaining()) {
+                throw new IOException("Truncated save file: " + file);
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("Corrupt save file (checksum mismatch): " + file);
+            }
+            return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Crash-safe autosave. Every input, and the score after each scoring click, is
+// appended as a fixed 24-byte record to a memory-mapped ring file; an append is a
+// handful of stores into the mapping, and a background thread forces the pages to
+// disk once a second. Every so often the full simulation state is written as a
+// checkpoint (through SaveFile, so atomically). Because the simulation is
+// deterministic, recover() rebuilds a crashed session by loading the checkpoint and
+// replaying the records that follow it.
+//
+// Record layout (little-endian): int session, int sequence, long tick, int a,
+// short b, byte type, byte c. The session is stored last, so a record
+// only counts once it is complete; a record from an earlier lap or an earlier
+// session fails the session/sequence check and ends the scan.
+public class SessionJournal implements Simulation.InputListener, AutoCloseable {
+    private static final int RECORD_BYTES = 24;
+    private static final int CAPACITY = 1 << 16; // records; the file is 1.5 MB
+    private static final int CHECKPOINT_RECORDS = CAPACITY / 4; // leaves the old checkpoint's tail intact
+    private static final long CHECKPOINT_INTERVAL_NANOS = 30_000_000_000L;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    static final byte CLICK = 1;       // a = x, b = y, c = view fraction
+    static final byte SCORE = 2;       // a = points after a scoring click
+    static final byte TOGGLE_MENU = 3;
+    static final byte MENU = 4;        // a = option
+    static final byte CLOSE = 5;       // clean shutdown: nothing to recover
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final Path checkpointFile;
+    private final Simulation simulation;
+    private final int session;
+    private final long checkpointIntervalTicks;
+    private final ScheduledExecutorService flusher;
+    private int sequence;
+    private int checkpointSequence;
+    private long checkpointTick;
+    private volatile boolean dirty;
+    private boolean closed;
+
+    // ~/Documents/target_practice.journal and .checkpoint unless -Dtargetpractice.journal=<base> says otherwise
+    public static Path defaultBase() {
+        String configured = System.getProperty("targetpractice.journal");
+        if (configured != null) {
+            return Path.of(configured);
+        }
+        return Path.of(System.getProperty("user.home"), "Documents", "target_practice");
+    }
+
+    private static Path journalFile(Path base) {
+        return base.resolveSibling(base.getFileName() + ".journal");
+    }
+
+    private static Path checkpointFile(Path base) {
+        return base.resolveSibling(base.getFileName() + ".checkpoint");
+    }
+
+    // Starts journaling a new session, beginning with a checkpoint of its current state
+    public SessionJournal(Path base, Simulation simulation) throws IOException {
+        this.simulation = simulation;
+        this.checkpointFile = checkpointFile(base);
+        this.session = (int) System.nanoTime() | 1; // never 0, which an unwritten record holds
+        this.checkpointIntervalTicks = CHECKPOINT_INTERVAL_NANOS / simulation.getStepNanos();
+        Path file = journalFile(base);
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) CAPACITY * RECORD_BYTES);
+        map.order(ByteOrder.LITTLE_ENDIAN);
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "journal-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        // Written before returning: until it lands, recovery would pair the last session's
+        // checkpoint with records this session is already overwriting
+        SaveFile.write(checkpointFile, snapshot());
+    }
+
+    private void append(byte type, long tick, int a, int b) {
+        append(type, tick, a, b, 0);
+    }
+
+    private void append(byte type, long tick, int a, int b, int c) {
+        if (closed) {
+            return;
+        }
+        int base = (sequence & (CAPACITY - 1)) * RECORD_BYTES;
+        map.putInt(base + 4, sequence);
+        map.putLong(base + 8, tick);
+        map.putInt(base + 16, a);
+        map.putShort(base + 20, (short) b);
+        map.put(base + 22, type);
+        map.put(base + 23, (byte) c);
+        map.putInt(base, session); // last: marks the record complete
+        sequence++;
+        dirty = true;
+    }
+
+    @Override
+    public void onClick(long tick, int x, int y, int viewFraction, int scored) {
+        append(CLICK, tick, x, y, viewFraction);
+        if (scored != GameMode.MISS) {
+            append(SCORE, tick, simulation.getPoints(), 0);
+        }
+    }
+
+    @Override
+    public void onToggleMenu(long tick) {
+        append(TOGGLE_MENU, tick, 0, 0);
+    }
+
+    @Override
+    public void onMenuOption(long tick, int option) {
+        append(MENU, tick, option, 0);
+    }
+
+    // A loaded save isn't in the journal, so start again from a checkpoint of it
+    @Override
+    public void onLoad(long tick, ByteBuffer state) {
+        checkpoint();
+    }
+
+    // Call from the game thread between steps, with the game state locked
+    public boolean isCheckpointDue() {
+        return sequence - checkpointSequence >= CHECKPOINT_RECORDS
+                || simulation.getTick() - checkpointTick >= checkpointIntervalTicks;
+    }
+
+    // Snapshots the simulation now and writes it in the background. Until the write
+    // lands, the previous checkpoint and its records stay valid.
+    public void checkpoint() {
+        if (closed) {
+            return;
+        }
+        SaveFile.writeAsync(checkpointFile, snapshot()).exceptionally(error -> {
+            System.err.println("Autosave checkpoint failed: " + error);
+            return null;
+        });
+    }
+
+    private ByteBuffer snapshot() {
+        ByteBuffer state = simulation.saveState();
+        ByteBuffer payload = ByteBuffer.allocate(4 + 4 + 8 + 1 + state.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+        payload.putInt(session).putInt(sequence).putLong(simulation.getTick());
+        payload.put((byte) (simulation.isMenuShown() ? 1 : 0)); // saves resume with it hidden; the session may not have
+        payload.put(state).flip();
+        checkpointSequence = sequence;
+        checkpointTick = simulation.getTick();
+        return payload;
+    }
+
+    private void flush() {
+        if (dirty) {
+            dirty = false;
+            map.force();
+        }
+    }
+
+    // Marks the session as cleanly closed, so the next launch starts fresh
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        append(CLOSE, simulation.getTick(), 0, 0);
+        closed = true;
+        flusher.shutdown();
+        map.force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Rebuilds the session that was running when the game last died, with the menu shown.
+    // Returns null if that session closed cleanly or there is nothing to recover.
+    public static Simulation recover(Path base, int updatesPerSecond) throws IOException {
+        Path file = journalFile(base), checkpoint = checkpointFile(base);
+        if (!Files.exists(file) || !Files.exists(checkpoint)) {
+            return null;
+        }
+        long started = System.nanoTime();
+        ByteBuffer payload = SaveFile.read(checkpoint);
+        int session = payload.getInt();
+        int sequence = payload.getInt();
+        long checkpointTick = payload.getLong();
+        boolean menuShown = payload.get() != 0;
+
+        Simulation simulation = new Simulation(System.nanoTime(), updatesPerSecond); // every generator comes from the checkpoint
+        simulation.loadState(payload.slice());
+        simulation.setMenuShown(menuShown);
+        int replayed = 0;
+        int journaledPoints = simulation.getPoints();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = Math.min(channel.size(), (long) CAPACITY * RECORD_BYTES);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            for (int s = sequence; s - sequence < CAPACITY; s++) {
+                int at = (s & (CAPACITY - 1)) * RECORD_BYTES;
+                if (at + RECORD_BYTES > size || map.getInt(at) != session || map.getInt(at + 4) != s) {
+                    break; // the end of what was written before the crash
+                }
+                long tick = map.getLong(at + 8) - checkpointTick;
+                int a = map.getInt(at + 16);
+                int b = map.getShort(at + 20);
+                while (simulation.getTick() < tick) {
+                    simulation.step();
+                }
+                switch (map.get(at + 22)) {
+                    case CLICK -> simulation.click(a, b, map.get(at + 23) & 0xFF);
+                    case SCORE -> journaledPoints = a;
+                    case TOGGLE_MENU -> simulation.toggleMenu();
+                    case MENU -> simulation.chooseMenuOption(a);
+                    case CLOSE -> {
+                        simulation.shutdown();
+                        return null; // closed cleanly
+                    }
+                    default -> {
+                    }
+                }
+                replayed++;
+            }
+        }
+        if (simulation.getPoints() != journaledPoints) {
+            System.err.println("Recovered score " + simulation.getPoints() + " differs from the journal's "
+                    + journaledPoints + "; keeping the journal's");
+            simulation.setPoints(journaledPoints);
+        }
+        simulation.setMenuShown(true);
+        System.out.printf("Recovered the previous session from its checkpoint and %d journal records in %.1f ms%n",
+                replayed, (System.nanoTime() - started) / 1e6);
+        return simulation;
+    }
+}
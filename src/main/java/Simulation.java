@@ -0,0 +1,378 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// The whole game minus the window: modes, score, clock and randomness. Nothing in
+// here touches Swing or the screen, so it runs with java.awt.headless=true and can
+// be stepped as fast as the CPU allows. Every random number comes from the seed,
+// so two simulations with the same seed and the same inputs end in the same state.
+public class Simulation {
+    // Told about every input the simulation receives, after it has been applied, e.g. to
+    // record or journal the session. tick is the number of steps taken before the input.
+    public interface InputListener {
+        void onClick(long tick, int x, int y, int viewFraction, int scored);
+
+        void onToggleMenu(long tick);
+
+        void onMenuOption(long tick, int option);
+
+        void onLoad(long tick, ByteBuffer state);
+    }
+
+    // What other threads may know about the simulation, which is confined to the thread
+    // that steps it: a copy filled in by captureStatus and handed over whole, e.g.
+    // through a TripleBuffer
+    public static final class Status {
+        private long tick;
+        private int points;
+        private boolean menuShown;
+        private long modeTime;
+
+        public long getTick() {
+            return tick;
+        }
+
+        public int getPoints() {
+            return points;
+        }
+
+        public boolean isMenuShown() {
+            return menuShown;
+        }
+
+        public long getModeTime() {
+            return modeTime;
+        }
+    }
+
+    // The play area targets spawn in, in window coordinates
+    public static final int AREA_X = 100;
+    public static final int AREA_Y = 200;
+    public static final int AREA_WIDTH = 1000;
+    public static final int AREA_HEIGHT = 300;
+
+    // Menu choices that change the simulation. Input logs store these numbers, so they
+    // never change, whatever the on-screen menu's order: they began as positions in it,
+    // where 1 to 3 were load, save and help and 6 was exit, which only concern the window.
+    public static final int MENU_NEW_GAME = 0;
+    public static final int MENU_HARD_MODE = 4;
+    public static final int MENU_EASY_MODE = 5;
+    public static final int MENU_RESTART = 7; // from the menu bar, not the on-screen menu
+
+    // Where the screen is within a step, in 1/VIEW_FRACTIONS of one. Frames are drawn, and
+    // clicks tested, that far past the step before the last: a full step behind the
+    // simulation, so every move the view reaches has already been made and motion
+    // never stalls waiting for the next one. Input logs store a click's fraction in a byte.
+    public static final int VIEW_FRACTIONS = 256;
+
+    private final long seed;
+    private final GameRandom random;
+    private final boolean deterministic;
+    private final ModeManager modeManager = new ModeManager();
+    private InputListener[] listeners = new InputListener[0];
+    private final long stepNanos;
+    private long tick;
+    private int points;
+    private boolean menuShown;
+
+    // A deterministic simulation stepping at the given rate
+    public Simulation(long seed, int updatesPerSecond) {
+        this(seed, updatesPerSecond, true);
+    }
+
+    // Not deterministic: hard mode refills its spawn points on a background thread, which
+    // keeps placement off the game loop but makes the exact points depend on timing
+    public Simulation(long seed, int updatesPerSecond, boolean deterministic) {
+        this.seed = seed;
+        this.random = new GameRandom(seed);
+        this.deterministic = deterministic;
+        this.stepNanos = 1_000_000_000L / updatesPerSecond;
+        modeManager.update(0); // start the loop clock at 0, so the first step is a full step
+    }
+
+    // Each mode gets its own generator, seeded from ours, so what one mode draws never
+    // shifts the numbers another sees
+    private GameRandom nextModeRandom() {
+        return new GameRandom(random.nextLong());
+    }
+
+    public EasyMode createEasyMode() {
+        return new EasyMode(AREA_X, AREA_Y, AREA_WIDTH, AREA_HEIGHT, modeManager.getScheduler(), nextModeRandom());
+    }
+
+    public HardMode createHardMode() {
+        return createHardMode(1, 2);
+    }
+
+    // Drill-scale movement; see StressMode. Moves on the common fork/join pool.
+    public StressMode createStressMode(int targetCount) {
+        int friends = Math.max(1, targetCount / 3);
+        return createStressMode(friends, targetCount - friends);
+    }
+
+    public StressMode createStressMode(int friendCount, int foeCount) {
+        return new StressMode(AREA_X, AREA_Y, AREA_WIDTH, AREA_HEIGHT, friendCount, foeCount,
+                modeManager.getScheduler(), nextModeRandom(), ForkJoinPool.commonPool());
+    }
+
+    public HardMode createHardMode(int friendCount, int foeCount) {
+        return new HardMode(AREA_X, AREA_Y, AREA_WIDTH, AREA_HEIGHT, friendCount, foeCount,
+                modeManager.getScheduler(), nextModeRandom(), !deterministic);
+    }
+
+    // The state at launch: the menu over an easy round playing behind it
+    public void startDemo() {
+        switchTo(createEasyMode());
+        menuShown = true;
+    }
+
+    public void chooseMenuOption(int option) {
+        switch (option) {
+            case MENU_NEW_GAME, MENU_EASY_MODE -> {
+                start(createEasyMode());
+                menuShown = false;
+            }
+            case MENU_HARD_MODE -> {
+                start(createHardMode());
+                menuShown = false;
+            }
+            case MENU_RESTART -> {
+                start(createEasyMode());
+                menuShown = true;
+            }
+            default -> {
+            }
+        }
+        for (InputListener listener : listeners) {
+            listener.onMenuOption(tick, option);
+        }
+    }
+
+    // Save state, all little-endian (SaveFile adds the header and checksum):
+    //   long seed, long generator state, int points, long mode clock, byte mode
+    //   (0 easy, 1 hard, 2 stress), for hard and stress mode int friend count and int
+    //   foe count, then the mode's own state
+    private static final byte SAVED_EASY = 0;
+    private static final byte SAVED_HARD = 1;
+    private static final byte SAVED_STRESS = 2;
+
+    // Snapshots the session; cheap enough to call on the game thread
+    public ByteBuffer saveState() {
+        GameMode mode = modeManager.getCurrent();
+        if (mode == null) {
+            throw new IllegalStateException("No game in progress");
+        }
+        int modeSize = mode.getStateSize();
+        if (modeSize == 0) {
+            throw new IllegalStateException("A " + mode.getName() + " can't be saved");
+        }
+        ByteBuffer out = ByteBuffer.allocate(8 + 8 + 4 + 8 + 1 + 8 + modeSize).order(ByteOrder.LITTLE_ENDIAN);
+        out.putLong(seed);
+        out.putLong(random.getState());
+        out.putInt(points);
+        out.putLong(modeManager.getModeTime());
+        if (mode instanceof HardMode hard) {
+            int friends = hard.getFriendCount();
+            out.put(SAVED_HARD);
+            out.putInt(friends);
+            out.putInt(hard.targets.size() - friends);
+        } else if (mode instanceof StressMode stress) {
+            int friends = stress.getFriendCount();
+            out.put(SAVED_STRESS);
+            out.putInt(friends);
+            out.putInt(stress.targets.size() - friends);
+        } else {
+            out.put(SAVED_EASY);
+        }
+        mode.writeState(out, modeManager.getModeTime());
+        return out.flip();
+    }
+
+    // Resumes a saved session with the menu hidden. The mode clock is put back to where
+    // it was when the state was saved, so everything the mode has scheduled fires on
+    // the same steps it would have. Throws IllegalArgumentException if the state is malformed.
+    public void loadState(ByteBuffer state) {
+        ByteBuffer in = state.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            in.getLong(); // the seed the session started from, for reference
+            long randomState = in.getLong();
+            int savedPoints = in.getInt();
+            long savedModeTime = in.getLong();
+            byte savedMode = in.get();
+            GameMode mode;
+            if (savedMode == SAVED_HARD || savedMode == SAVED_STRESS) {
+                int friends = in.getInt(), foes = in.getInt();
+                if (friends < 0 || foes < 0) {
+                    throw new IllegalArgumentException("Corrupt save: negative target count");
+                }
+                mode = savedMode == SAVED_HARD ? createHardMode(friends, foes) : createStressMode(friends, foes);
+            } else if (savedMode == SAVED_EASY) {
+                mode = createEasyMode();
+            } else {
+                throw new IllegalArgumentException("Corrupt save: unknown mode " + savedMode);
+            }
+            mode.readState(in, savedModeTime);
+            modeManager.restore(mode, savedModeTime); // only once the whole state has been read
+            random.setState(randomState);
+            points = savedPoints;
+            menuShown = false;
+            for (InputListener listener : listeners) {
+                listener.onLoad(tick, state.duplicate());
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Corrupt save: truncated", e);
+        }
+    }
+
+    // Starts a fresh round in the given mode with the score reset
+    public void start(GameMode mode) {
+        points = 0;
+        modeManager.switchTo(mode);
+    }
+
+    // Swaps the mode but keeps the score, e.g. when loading a save
+    public void switchTo(GameMode mode) {
+        modeManager.switchTo(mode);
+    }
+
+    // Advances one fixed step; the mode clock stands still while the menu is shown
+    public void step() {
+        tick++;
+        modeManager.setPaused(menuShown);
+        modeManager.update(tick * stepNanos);
+    }
+
+    public boolean isMenuShown() {
+        return menuShown;
+    }
+
+    public void setMenuShown(boolean shown) {
+        menuShown = shown;
+    }
+
+    public void toggleMenu() {
+        menuShown = !menuShown;
+        for (InputListener listener : listeners) {
+            listener.onToggleMenu(tick);
+        }
+    }
+
+    // Puts what the modes draw at the given point within the next step
+    public void setViewFraction(int viewFraction) {
+        GameMode mode = modeManager.getCurrent();
+        if (mode != null) {
+            mode.setViewTime(modeManager.getModeTime() - stepNanos + stepNanos * viewFraction / VIEW_FRACTIONS);
+        }
+    }
+
+    // Scores a click against the view at the start of the step and returns the points
+    // it was worth, or GameMode.MISS
+    public int click(int x, int y) {
+        return click(x, y, 0);
+    }
+
+    // Scores a click against what was on screen viewFraction into the step
+    public int click(int x, int y, int viewFraction) {
+        setViewFraction(viewFraction);
+        int scored = modeManager.onClick(x, y);
+        if (scored != GameMode.MISS) {
+            points += scored;
+        }
+        for (InputListener listener : listeners) {
+            listener.onClick(tick, x, y, viewFraction, scored);
+        }
+        return scored;
+    }
+
+    public void captureStatus(Status status) {
+        status.tick = tick;
+        status.points = points;
+        status.menuShown = menuShown;
+        status.modeTime = modeManager.getModeTime();
+    }
+
+    public void addInputListener(InputListener listener) {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+
+    public void shutdown() {
+        modeManager.shutdown();
+    }
+
+    public GameMode getMode() {
+        return modeManager.getCurrent();
+    }
+
+    public ModeManager getModeManager() {
+        return modeManager;
+    }
+
+    public int getPoints() {
+        return points;
+    }
+
+    public void setPoints(int points) {
+        this.points = points;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public long getStepNanos() {
+        return stepNanos;
+    }
+
+    // Headless run for balancing and regression checks, e.g.
+    //   java -Djava.awt.headless=true -cp target/classes Simulation hard 42 1000000
+    // A bot clicks a random target every clickEvery steps; the final score depends only
+    // on the arguments. Mode "stress" runs STRESS_TARGETS targets.
+    private static final int STRESS_TARGETS = 50_000;
+
+    public static void main(String[] args) {
+        String modeName = args.length > 0 ? args[0] : "hard";
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42L;
+        long steps = args.length > 2 ? Long.parseLong(args[2]) : 1_000_000L;
+        int clickEvery = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+
+        Simulation simulation = new Simulation(seed, 60);
+        simulation.start(switch (modeName) {
+            case "hard" -> simulation.createHardMode();
+            case "stress" -> simulation.createStressMode(STRESS_TARGETS);
+            default -> simulation.createEasyMode();
+        });
+        Random bot = new Random(seed ^ 0x5DEECE66DL);
+
+        long started = System.nanoTime();
+        for (long s = 1; s <= steps; s++) {
+            simulation.step();
+            if (s % clickEvery == 0) {
+                GameMode mode = simulation.getMode();
+                if (mode instanceof HardMode hard) {
+                    int i = bot.nextInt(hard.targets.size());
+                    simulation.click(hard.targets.getX(i) + bot.nextInt(hard.playerWidth),
+                            hard.targets.getY(i) + bot.nextInt(hard.playerHeight));
+                } else if (mode instanceof StressMode stress) {
+                    int i = bot.nextInt(stress.targets.size());
+                    simulation.click(stress.targets.getX(i) + bot.nextInt(stress.playerWidth),
+                            stress.targets.getY(i) + bot.nextInt(stress.playerHeight));
+                } else if (mode instanceof EasyMode easy) {
+                    simulation.click(easy.getPlayerX() + bot.nextInt(easy.getPlayerWidth()),
+                            easy.getPlayerY() + bot.nextInt(easy.getPlayerHeight()));
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - started;
+        System.out.printf("%s seed=%d steps=%d points=%d (%.0f steps/s)%n", modeName, seed, steps,
+                simulation.getPoints(), steps * 1e9 / elapsed);
+        simulation.shutdown();
+    }
+}
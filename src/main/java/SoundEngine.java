@@ -0,0 +1,153 @@
+import javax.sound.sampled.*;
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Decodes every sound effect once at startup and plays it from a fixed pool of
+// pre-opened clips on a single audio thread, so clicking never spawns threads or
+// opens new lines. The effects load in parallel on the given executor; one asked
+// for before it has loaded is skipped.
+public class SoundEngine {
+    public static final int CLICK_SOUND = 0;  // friendly target hit
+    public static final int CLICK_PLAYER = 1; // enemy target hit
+
+    private static final String[] RESOURCES = {"/sounds/click_sound.wav", "/sounds/click_player.wav"};
+    private static final int VOICES_PER_EFFECT = 4;
+    private static final int MAX_PENDING = 16;
+
+    private final AtomicReferenceArray<Clip[]> voices = new AtomicReferenceArray<>(RESOURCES.length);
+    private final long[][] voiceStartTimes = new long[RESOURCES.length][VOICES_PER_EFFECT];
+    private final BlockingQueue<Integer> pending = new ArrayBlockingQueue<>(MAX_PENDING);
+    private final Thread audioThread;
+    private volatile boolean running = true;
+
+    private final AtomicLong played = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong stolen = new AtomicLong();
+
+    public SoundEngine(Executor loader) {
+        for (int effect = 0; effect < RESOURCES.length; effect++) {
+            int index = effect;
+            loader.execute(() -> load(index));
+        }
+        audioThread = new Thread(this::audioLoop, "audio");
+        audioThread.setDaemon(true);
+        audioThread.start();
+    }
+
+    private void load(int effect) {
+        Clip[] clips = openVoices(RESOURCES[effect]);
+        voices.set(effect, clips);
+        if (!running) {
+            closeVoices(clips); // closed while this one was loading
+        }
+    }
+
+    private Clip[] openVoices(String resourcePath) {
+        try (InputStream soundStream = getClass().getResourceAsStream(resourcePath)) {
+            if (soundStream == null) {
+                System.err.println("Sound file not found: " + resourcePath);
+                return new Clip[0];
+            }
+            AudioFormat format;
+            byte[] data;
+            try (AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(new BufferedInputStream(soundStream))) {
+                format = audioInputStream.getFormat();
+                data = audioInputStream.readAllBytes();
+            }
+            // Every voice shares the same decoded PCM buffer
+            Clip[] clips = new Clip[VOICES_PER_EFFECT];
+            for (int i = 0; i < clips.length; i++) {
+                clips[i] = AudioSystem.getClip();
+                clips[i].open(format, data, 0, data.length);
+            }
+            return clips;
+        } catch (Exception e) {
+            // No audio device (e.g. headless box): run silently rather than failing the game
+            System.err.println("Sound disabled for " + resourcePath + ": " + e.getMessage());
+            return new Clip[0];
+        }
+    }
+
+    // Called from the input path; never blocks. Requests beyond the queue bound are dropped.
+    public void play(int effect) {
+        Clip[] clips = voices.get(effect);
+        if (clips == null || clips.length == 0) {
+            return;
+        }
+        if (!pending.offer(effect)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void audioLoop() {
+        while (running) {
+            try {
+                startVoice(pending.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void startVoice(int effect) {
+        Clip[] clips = voices.get(effect);
+        long[] startTimes = voiceStartTimes[effect];
+        int voice = -1;
+        for (int i = 0; i < clips.length; i++) {
+            if (!clips[i].isActive()) {
+                voice = i;
+                break;
+            }
+        }
+        if (voice < 0) {
+            // Every voice is busy: steal the one that has been playing longest
+            voice = 0;
+            for (int i = 1; i < clips.length; i++) {
+                if (startTimes[i] < startTimes[voice]) {
+                    voice = i;
+                }
+            }
+            clips[voice].stop();
+            stolen.incrementAndGet();
+        }
+        Clip clip = clips[voice];
+        clip.setFramePosition(0);
+        clip.start();
+        startTimes[voice] = System.nanoTime();
+        played.incrementAndGet();
+    }
+
+    public long getPlayedCount() {
+        return played.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getStolenCount() {
+        return stolen.get();
+    }
+
+    public void close() {
+        running = false;
+        audioThread.interrupt();
+        for (int effect = 0; effect < RESOURCES.length; effect++) {
+            Clip[] clips = voices.get(effect);
+            if (clips != null) {
+                closeVoices(clips);
+            }
+        }
+    }
+
+    private static void closeVoices(Clip[] clips) {
+        for (Clip clip : clips) {
+            clip.close();
+        }
+    }
+}
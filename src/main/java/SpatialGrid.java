@@ -0,0 +1,159 @@
+import java.util.Arrays;
+
+// Uniform grid over the play area. Each item is filed under the cell holding its
+// anchor point (top-left corner) in an intrusive doubly linked list, so insert,
+// remove and move are O(1) and no objects are allocated after construction.
+// Points outside the grid are clamped into the border cells.
+public class SpatialGrid {
+    private static final int NONE = -1;
+
+    private final int originX, originY;
+    private final int cellSize;
+    private final int columns, rows;
+    private final int[] cellHead;
+
+    private int[] next, prev, cellOf, itemX, itemY;
+    private int[] results = new int[16];
+
+    public SpatialGrid(int originX, int originY, int width, int height, int cellSize, int capacity) {
+        this.originX = originX;
+        this.originY = originY;
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (width + cellSize - 1) / cellSize);
+        this.rows = Math.max(1, (height + cellSize - 1) / cellSize);
+        cellHead = new int[columns * rows];
+        Arrays.fill(cellHead, NONE);
+        allocate(Math.max(1, capacity));
+    }
+
+    private void allocate(int capacity) {
+        int old = next == null ? 0 : next.length;
+        next = next == null ? new int[capacity] : Arrays.copyOf(next, capacity);
+        prev = prev == null ? new int[capacity] : Arrays.copyOf(prev, capacity);
+        cellOf = cellOf == null ? new int[capacity] : Arrays.copyOf(cellOf, capacity);
+        itemX = itemX == null ? new int[capacity] : Arrays.copyOf(itemX, capacity);
+        itemY = itemY == null ? new int[capacity] : Arrays.copyOf(itemY, capacity);
+        Arrays.fill(cellOf, old, capacity, NONE);
+    }
+
+    private int column(int x) {
+        return Math.max(0, Math.min(columns - 1, Math.floorDiv(x - originX, cellSize)));
+    }
+
+    private int row(int y) {
+        return Math.max(0, Math.min(rows - 1, Math.floorDiv(y - originY, cellSize)));
+    }
+
+    public void insert(int item, int x, int y) {
+        if (item >= next.length) {
+            allocate(Math.max(item + 1, next.length * 2));
+        }
+        if (cellOf[item] != NONE) {
+            move(item, x, y);
+            return;
+        }
+        itemX[item] = x;
+        itemY[item] = y;
+        link(item, row(y) * columns + column(x));
+    }
+
+    public void remove(int item) {
+        if (item < cellOf.length && cellOf[item] != NONE) {
+            unlink(item);
+        }
+    }
+
+    public void move(int item, int x, int y) {
+        itemX[item] = x;
+        itemY[item] = y;
+        int cell = row(y) * columns + column(x);
+        if (cell != cellOf[item]) {
+            unlink(item);
+            link(item, cell);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(cellHead, NONE);
+        Arrays.fill(cellOf, NONE);
+    }
+
+    private void link(int item, int cell) {
+        int head = cellHead[cell];
+        next[item] = head;
+        prev[item] = NONE;
+        if (head != NONE) {
+            prev[head] = item;
+        }
+        cellHead[cell] = item;
+        cellOf[item] = cell;
+    }
+
+    private void unlink(int item) {
+        int cell = cellOf[item];
+        if (prev[item] != NONE) {
+            next[prev[item]] = next[item];
+        } else {
+            cellHead[cell] = next[item];
+        }
+        if (next[item] != NONE) {
+            prev[next[item]] = prev[item];
+        }
+        cellOf[item] = NONE;
+    }
+
+    // Collects every item whose anchor lies in [minX, maxX] x [minY, maxY] (inclusive).
+    // The items are left in results(); the returned count is valid until the next query.
+    public int query(int minX, int minY, int maxX, int maxY) {
+        int found = 0;
+        int lastRow = row(maxY), lastColumn = column(maxX);
+        for (int r = row(minY); r <= lastRow; r++) {
+            for (int c = column(minX); c <= lastColumn; c++) {
+                for (int item = cellHead[r * columns + c]; item != NONE; item = next[item]) {
+                    int x = itemX[item], y = itemY[item];
+                    if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                        if (found == results.length) {
+                            results = Arrays.copyOf(results, found * 2);
+                        }
+                        results[found++] = item;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    public int[] results() {
+        return results;
+    }
+
+    // True if any item other than 'exclude' has its anchor strictly closer than 'distance' to (x, y)
+    public boolean anyWithin(int x, int y, int distance, int exclude) {
+        long limit = (long) distance * distance;
+        int lastRow = row(y + distance), lastColumn = column(x + distance);
+        for (int r = row(y - distance); r <= lastRow; r++) {
+            for (int c = column(x - distance); c <= lastColumn; c++) {
+                for (int item = cellHead[r * columns + c]; item != NONE; item = next[item]) {
+                    if (item == exclude) {
+                        continue;
+                    }
+                    long dx = itemX[item] - x, dy = itemY[item] - y;
+                    if (dx * dx + dy * dy < limit) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // True if any item other than 'exclude' is anchored exactly at (x, y)
+    public boolean anyAt(int x, int y, int exclude) {
+        for (int item = cellHead[row(y) * columns + column(x)]; item != NONE; item = next[item]) {
+            if (item != exclude && itemX[item] == x && itemY[item] == y) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
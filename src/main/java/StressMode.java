@@ -0,0 +1,314 @@
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Hard mode's movement at drill scale: tens of thousands of targets walking to random
+// destinations. Unlike hard mode there is no spacing between targets, so each one
+// moves independently of the others and a movement step splits into fixed chunks of
+// CHUNK_SIZE targets that run in parallel on a fork/join pool. Each chunk draws its
+// destinations from its own stream, split in chunk order from one seed drawn from the
+// mode's generator, so the result depends only on that seed and never on how many
+// threads ran the chunks.
+public class StressMode implements GameMode, EventScheduler.Handler {
+    private static final int FRIEND_IMAGE = 0; // indices into HardMode.IMAGES
+    private static final int FOE_IMAGE = 1;
+
+    static final int CHUNK_SIZE = 2048;
+    // Below this a step is under about 60 us of work (some 7 ns per target), the same
+    // order as waking the pool's workers, so one thread moves them all
+    static final int PARALLEL_MIN_TARGETS = 8192;
+
+    // SplitMix64, the generator behind SplittableRandom, with each chunk's state kept in
+    // an array so a save can capture it. States sit a cache line apart so chunks running
+    // on different cores don't contend for one.
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final int RANDOM_STRIDE = 8;
+
+    private static final int EVENT_MOVE = 0;
+    private static final long MOVE_INTERVAL_NANOS = 50_000_000L; // same cadence as hard mode
+    private static final long CLICK_COOLDOWN_NANOS = 300_000_000L;
+
+    public final TargetStore targets;
+    public int playerWidth = 200, playerHeight = 200;
+    private final int areaX, areaY, spawnWidth, spawnHeight;
+    private final ImageCache.Sprite[] sprites = new ImageCache.Sprite[2];
+    private final HitMask[] hitMasks = new HitMask[2];
+
+    private final int chunks;
+    private final long[] chunkRandom;
+    private final ForkJoinPool pool; // null moves everything on the calling thread
+
+    private final EventScheduler scheduler;
+    private long moveEvent = EventScheduler.NO_EVENT;
+    private long nextMoveTime;
+    private long gameTimeNanos;
+    private long roundStartTime;
+    private boolean restored;
+    private boolean moved = true; // something changed since damage was last collected
+
+    public StressMode(int areaX, int areaY, int areaWidth, int areaHeight, int friendCount, int foeCount,
+                      EventScheduler scheduler, GameRandom random, ForkJoinPool pool) {
+        this.areaX = areaX;
+        this.areaY = areaY;
+        this.spawnWidth = Math.max(1, areaWidth - playerWidth);
+        this.spawnHeight = Math.max(1, areaHeight - playerHeight);
+        this.scheduler = scheduler;
+        this.pool = pool;
+
+        ImageCache imageCache = ImageCache.shared();
+        sprites[FRIEND_IMAGE] = imageCache.sprite(HardMode.IMAGES[FRIEND_IMAGE], playerWidth, playerHeight);
+        sprites[FOE_IMAGE] = imageCache.sprite(HardMode.IMAGES[FOE_IMAGE], playerWidth, playerHeight);
+        hitMasks[FRIEND_IMAGE] = sprites[FRIEND_IMAGE].getHitMask();
+        hitMasks[FOE_IMAGE] = sprites[FOE_IMAGE].getHitMask();
+
+        targets = new TargetStore(friendCount + foeCount);
+        for (int i = 0; i < friendCount; i++) {
+            targets.add(TargetStore.FRIEND, FRIEND_IMAGE);
+        }
+        for (int i = 0; i < foeCount; i++) {
+            targets.add(TargetStore.FOE, FOE_IMAGE);
+        }
+        chunks = (targets.count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunkRandom = new long[chunks * RANDOM_STRIDE];
+        SplittableRandom streams = new SplittableRandom(random.nextLong());
+        for (int c = 0; c < chunks; c++) {
+            chunkRandom[c * RANDOM_STRIDE] = streams.split().nextLong();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "stress";
+    }
+
+    @Override
+    public void start(long gameTimeNanos) {
+        this.gameTimeNanos = gameTimeNanos;
+        if (!restored) {
+            for (int c = 0; c < chunks; c++) {
+                spawnChunk(c);
+            }
+            roundStartTime = gameTimeNanos;
+            nextMoveTime = gameTimeNanos + MOVE_INTERVAL_NANOS;
+        }
+        moveEvent = scheduler.schedule(nextMoveTime, this, EVENT_MOVE, 0);
+    }
+
+    @Override
+    public void update(long gameTimeNanos) {
+        this.gameTimeNanos = gameTimeNanos;
+    }
+
+    @Override
+    public void onEvent(int type, int arg, long gameTimeNanos) {
+        if (type == EVENT_MOVE) {
+            this.gameTimeNanos = gameTimeNanos;
+            movePlayers();
+            nextMoveTime += MOVE_INTERVAL_NANOS;
+            moveEvent = scheduler.schedule(nextMoveTime, this, EVENT_MOVE, 0);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        scheduler.cancelAll(this);
+        moveEvent = EventScheduler.NO_EVENT;
+    }
+
+    // Package-private so the JMH workloads can drive it directly
+    void movePlayers() {
+        if (pool == null || pool.getParallelism() == 1 || targets.count < PARALLEL_MIN_TARGETS) {
+            for (int c = 0; c < chunks; c++) {
+                moveChunk(c);
+            }
+        } else {
+            pool.invoke(new MoveChunks(0, chunks));
+        }
+        moved = true;
+    }
+
+    // Splits a range of chunks in halves until each task holds one
+    private final class MoveChunks extends RecursiveAction {
+        private final int from, to;
+
+        MoveChunks(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                moveChunk(from);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new MoveChunks(from, middle), new MoveChunks(middle, to));
+            }
+        }
+    }
+
+    // Touches only the chunk's own slice of the arrays and its own random stream
+    private void moveChunk(int c) {
+        int end = Math.min(targets.count, (c + 1) * CHUNK_SIZE);
+        for (int i = c * CHUNK_SIZE; i < end; i++) {
+            if (targets.step(i)) {
+                targets.targetX[i] = areaX + nextInt(c, spawnWidth);
+                targets.targetY[i] = areaY + nextInt(c, spawnHeight);
+            }
+        }
+    }
+
+    private void spawnChunk(int c) {
+        int end = Math.min(targets.count, (c + 1) * CHUNK_SIZE);
+        for (int i = c * CHUNK_SIZE; i < end; i++) {
+            spawn(c, i);
+        }
+    }
+
+    private void spawn(int c, int i) {
+        targets.x[i] = areaX + nextInt(c, spawnWidth);
+        targets.y[i] = areaY + nextInt(c, spawnHeight);
+        targets.targetX[i] = areaX + nextInt(c, spawnWidth);
+        targets.targetY[i] = areaY + nextInt(c, spawnHeight);
+    }
+
+    // A number in [0, bound) from chunk c's stream
+    private int nextInt(int c, int bound) {
+        long z = chunkRandom[c * RANDOM_STRIDE] += GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        z ^= z >>> 31;
+        return (int) (((z >>> 32) * bound) >>> 32);
+    }
+
+    @Override
+    public void render(Graphics g) {
+        int count = targets.count;
+        for (int i = 0; i < count; i++) {
+            sprites[targets.image[i]].draw(g, targets.x[i], targets.y[i]);
+        }
+    }
+
+    // At this density nearly the whole area changes every move, so it is redrawn whole
+    @Override
+    public void collectDamage(DirtyRegion region) {
+        if (moved) {
+            region.markFull();
+            moved = false;
+        }
+    }
+
+    // The topmost target with a visible pixel under the click scores and jumps somewhere
+    // new. Clicks are rare, so a scan from the top of the draw order beats keeping a grid
+    // up to date every move.
+    @Override
+    public int onClick(int clickX, int clickY) {
+        for (int i = targets.count - 1; i >= 0; i--) {
+            if (hitMasks[targets.image[i]].contains(clickX - targets.x[i], clickY - targets.y[i])
+                    && gameTimeNanos >= targets.cooldownUntil[i]) {
+                targets.cooldownUntil[i] = gameTimeNanos + CLICK_COOLDOWN_NANOS;
+                spawn(i / CHUNK_SIZE, i);
+                roundStartTime = gameTimeNanos;
+                moved = true;
+                return targets.getPoints(i);
+            }
+        }
+        return MISS;
+    }
+
+    @Override
+    public long getRoundStartTime() {
+        return roundStartTime;
+    }
+
+    @Override
+    public int getStateSize() {
+        return 8 + 8 + 4 + targets.count * (4 * 4 + 8) + chunks * 8;
+    }
+
+    @Override
+    public void writeState(ByteBuffer out, long now) {
+        out.putLong(roundStartTime - now);
+        out.putLong(nextMoveTime - now);
+        int count = targets.count;
+        out.putInt(count);
+        for (int i = 0; i < count; i++) {
+            out.putInt(targets.x[i]);
+            out.putInt(targets.y[i]);
+            out.putInt(targets.targetX[i]);
+            out.putInt(targets.targetY[i]);
+            out.putLong(Math.max(0, targets.cooldownUntil[i] - now));
+        }
+        for (int c = 0; c < chunks; c++) {
+            out.putLong(chunkRandom[c * RANDOM_STRIDE]);
+        }
+    }
+
+    @Override
+    public void readState(ByteBuffer in, long now) {
+        roundStartTime = now + in.getLong();
+        nextMoveTime = now + in.getLong();
+        int count = in.getInt();
+        if (count != targets.count) {
+            throw new IllegalArgumentException("Saved " + count + " targets, mode has " + targets.count);
+        }
+        for (int i = 0; i < count; i++) {
+            targets.x[i] = in.getInt();
+            targets.y[i] = in.getInt();
+            targets.targetX[i] = in.getInt();
+            targets.targetY[i] = in.getInt();
+            targets.cooldownUntil[i] = now + in.getLong();
+        }
+        for (int c = 0; c < chunks; c++) {
+            chunkRandom[c * RANDOM_STRIDE] = in.getLong();
+        }
+        restored = true;
+    }
+
+    public int getFriendCount() {
+        int friends = 0;
+        for (int i = 0; i < targets.count; i++) {
+            if (targets.type[i] == TargetStore.FRIEND) {
+                friends++;
+            }
+        }
+        return friends;
+    }
+
+    // Movement step time against pool size, doubling up to the core count (or maxThreads), e.g.
+    //   java -Djava.awt.headless=true -cp target/classes StressMode 50000 2000
+    // Every pool size must end in the same positions; the checksum shows they do.
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : cores;
+        System.out.printf("%d targets, %d movement steps, %d cores available%n", count, steps, cores);
+        for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            EventScheduler scheduler = new EventScheduler(1_000_000L, 1024, 64);
+            int friends = Math.max(1, count / 3);
+            StressMode mode = new StressMode(0, 0, 4000, 3000, friends, count - friends, scheduler, new GameRandom(42L), pool);
+            mode.start(0);
+            for (int s = 0; s < steps / 10; s++) {
+                mode.movePlayers(); // warm up
+            }
+            long started = System.nanoTime();
+            for (int s = 0; s < steps; s++) {
+                mode.movePlayers();
+            }
+            double microsPerStep = (System.nanoTime() - started) / 1e3 / steps;
+            long checksum = 0;
+            for (int i = 0; i < count; i++) {
+                checksum = checksum * 31 + mode.targets.x[i] * 7919L + mode.targets.y[i];
+            }
+            System.out.printf("threads=%d: %.1f us per movement step, checksum %016x%n", threads, microsPerStep, checksum);
+            pool.shutdown();
+            if (threads >= maxThreads) {
+                break;
+            }
+        }
+    }
+}
@@ -1,277 +1,647 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.Random;
-import javax.sound.sampled.*;
-import java.io.*;
+import java.awt.image.VolatileImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
-
-public class TargetPractice extends JPanel implements MouseListener, ActionListener {
-    private Image backgroundImage;
-    private Image playerImage;
-    private int playerX;
-    private int playerY;
-    private int playerWidth;
-    private int playerHeight;
-    private Random random;
-    private Timer movementTimer;
-    private Timer respawnTimer;
-    private boolean playerVisible;
-    private int points;
-    private long clickTime;
-    private long lastClickTime;
-    private long lastFpsTime;
-    private int frames;
-    private int fps;
-    private double scale;
-    private long startTime;
-    private boolean showMenu;
-
-    private HardMode hardMode;
-    private boolean isHardMode; // To check if in hard mode
-    private boolean isEasyMode; // To check if in easy mode
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class TargetPractice extends JPanel implements MouseListener, GameLoop.Game {
+    private static final long LAUNCH_NANOS = System.nanoTime(); // about when main() started
+    private static final String BACKGROUND_IMAGE = "/background.png";
+    private static final String PLAYER_IMAGE = "/player.png";
+    private final ImageCache imageCache = ImageCache.shared();
+    private final AssetLoader assets = new AssetLoader(imageCache);
+    private ImageCache.Sprite backgroundSprite;
+
+    // All game rules live in the simulation; this panel only draws it and feeds it input.
+    // -Dtargetpractice.seed=N makes a session fully reproducible.
+    // Only the game loop thread touches the simulation, so it needs no lock. The EDT
+    // passes input to it through a lock-free queue, and any other change as a task to
+    // run between steps; what the EDT needs to know comes back as a status published
+    // after every step.
+    private final Simulation simulation;
+    private final ModeManager modeManager;
+    private final InputQueue input = new InputQueue();
+    private final ConcurrentLinkedQueue<Runnable> gameTasks = new ConcurrentLinkedQueue<>();
+    private final TripleBuffer<Simulation.Status> status = new TripleBuffer<>(Simulation.Status::new);
+
+    // -Dtargetpractice.record=<file> logs every input for exact replay; -Dtargetpractice.replay=<file>
+    // plays such a log back at normal speed and ignores live input
+    private InputRecorder recorder;
+    private InputReplay replay;
+    private boolean replayReported;
+
+    // Crash-safe autosave, on unless -Dtargetpractice.autosave=false; a session that
+    // didn't shut down cleanly is recovered at the next launch
+    private SessionJournal journal;
+
+    // Best scores per player profile, one board per mode. The profile defaults to
+    // -Dtargetpractice.profile, else the OS user, and can be changed from the leaderboard.
+    private Leaderboard easyBoard;
+    private Leaderboard hardBoard;
+    private volatile String profile;
+    private boolean roundPlayed; // the player has clicked since the round started
+
+    // Spawn-to-hit reaction times. A press is placed on the mode clock through the wall
+    // time of the last step, so it is timed to the nanosecond rather than to the step.
+    private final ReactionStats reactionStats = new ReactionStats();
+    private long lastStepNanos; // System.nanoTime() when the last step finished
+
+    private GameLoop gameLoop;
+    private VolatileImage backBuffer;
+    private Graphics2D backGraphics; // kept for the life of the back buffer rather than made per frame
+
+    // Dirty-rectangle rendering: only regions that changed since the last frame are redrawn
+    private final DirtyRegion dirtyRegion = new DirtyRegion();
+    private boolean fullRepaint = true;
+    private boolean drawnMenu;
+    private boolean firstFrameShown;
+    private GameMode drawnMode;
+    private volatile long pixelsRedrawn;
+
+    // Performance overlay, toggled with F3 (or on from the start with -Dtargetpractice.debug=true)
+    private volatile boolean showOverlay = Boolean.getBoolean("targetpractice.debug");
+    private boolean drawnOverlay;
+    private static final int OVERLAY_FIRST_LINE = 3;
+
+    // The HUD is rebuilt every frame into reusable char buffers and only re-measured and
+    // redrawn when a line's text changes, so a steady frame allocates nothing
+    private static final int HUD_LINES = 12; // points, timer, FPS, then the overlay lines
+    private final Font hudFont = new Font("Arial", Font.BOLD, 20);
+    private FontMetrics hudMetrics;
+    private final HudText[] hudText = new HudText[HUD_LINES];
+    private final HudText hudScratch = new HudText(96);
+    private final int[] hudBounds = new int[HUD_LINES * 4];
 
     private boolean isMuted = false;
     private JButton muteButton;
+    private SoundEngine soundEngine;
 
-
-    // Define the area for the player
-    private final int areaX = 100;
-    private final int areaY = 200;
-    private final int areaWidth = 1000;
-    private final int areaHeight = 300;
-
-    // Store the bounds of each menu option for detection
-    private Rectangle[] menuBounds;
+    // The on-screen menu, laid out whenever the panel changes size. A new layout replaces
+    // the whole array, so the loop drawing it and the EDT hit-testing it never see half of one.
+    private static final String[] MENU_OPTIONS = {"Start New Game", "Load Game", "Save Game", "Help",
+            "Start Hard Mode", "Start Easy Mode", "Leaderboard", "Exit"};
+    private static final Color MENU_SHADE = new Color(0, 0, 0, 150); // Semi-transparent background
+    private final Font menuFont = new Font("Arial", Font.BOLD, 40);
+    private volatile Rectangle[] menuBounds;
 
     public TargetPractice() {
-        setDoubleBuffered(true);
-        random = new Random();
+        // Frames are drawn actively by the game loop into our own back buffer
+        setIgnoreRepaint(true);
+        setDoubleBuffered(false);
+        for (int line = 0; line < HUD_LINES; line++) {
+            hudText[line] = new HudText(96);
+        }
         loadImages();
-        initializePlayer();
-        initializeTimers();
+        soundEngine = new SoundEngine(assets.getExecutor()); // Decode and open all sound effects once, in the background
+        int updatesPerSecond = Integer.getInteger("targetpractice.ups", 60);
+        simulation = createSimulation(updatesPerSecond);
+        if (replay != null) {
+            updatesPerSecond = replay.getUpdatesPerSecond();
+        }
+        modeManager = simulation.getModeManager();
+        openLeaderboards();
         addMouseListener(this);
-        showMenu = true; // Start with the menu shown
 
+        // Initialize menu bounds for mouse detection
+        layoutMenu();
 
-        // Start the game loop thread
-        new Thread(this::gameLoop).start();
+        // Start the game loop thread; from here on the simulation belongs to it
+        simulation.captureStatus(status.back());
+        status.publish();
+        gameLoop = new GameLoop(this, updatesPerSecond, Integer.getInteger("targetpractice.fps", 60));
+        gameLoop.setTrackAllocation(showOverlay);
+        gameLoop.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "shutdown"));
 
-        // Initialize menu bounds for mouse detection
-        initializeMenuBounds();
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                layoutMenu();
+            }
+        });
 
         // Key listener to handle the Esc key
         setFocusable(true);
         addKeyListener(new KeyAdapter() {
             @Override
             public void keyPressed(KeyEvent e) {
-                if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
-                    showMenu = !showMenu; // Toggle menu visibility
-                    repaint();
+                if (e.getKeyCode() == KeyEvent.VK_ESCAPE && replay == null) {
+                    input.offer(InputQueue.TOGGLE_MENU, 0, 0, 0); // Toggle menu visibility
+                } else if (e.getKeyCode() == KeyEvent.VK_F3) {
+                    showOverlay = !showOverlay; // Toggle the performance overlay
+                    gameLoop.setTrackAllocation(showOverlay);
                 }
             }
         });
     }
 
-    private void loadImages() {
-        backgroundImage = new ImageIcon(getClass().getResource("/background.png")).getImage();
-        playerImage = new ImageIcon(getClass().getResource("/player.png")).getImage();
-    }
-
+    private Simulation createSimulation(int updatesPerSecond) {
+        // -Dtargetpractice.connect=host[:port] joins a match on a MatchServer instead
+        String matchServer = System.getProperty("targetpractice.connect");
+        if (matchServer != null) {
+            try {
+                MatchClient client = MatchClient.connect(MatchClient.parseAddress(matchServer));
+                Simulation match = new Simulation(System.nanoTime(), updatesPerSecond, false);
+                match.start(new MatchMode(client, match.getStepNanos()));
+                return match;
+            } catch (IOException e) {
+                System.err.println("Could not join the match at " + matchServer + ": " + e);
+            }
+        }
+        String replayFile = System.getProperty("targetpractice.replay");
+        if (replayFile != null) {
+            try {
+                replay = new InputReplay(Path.of(replayFile));
+                return replay.createSimulation();
+            } catch (IOException e) {
+                e.printStackTrace();
+                replay = null;
+            }
+        }
+        // Recording and the autosave journal both replay inputs, so they need a deterministic simulation
+        Long seed = Long.getLong("targetpractice.seed");
+        String recordFile = System.getProperty("targetpractice.record");
+        boolean autosave = recordFile == null && !"false".equals(System.getProperty("targetpractice.autosave"));
+        if ((recordFile != null || autosave) && seed == null) {
+            seed = System.nanoTime();
+        }
 
-    private void initializePlayer() {
-        playerWidth = playerImage.getWidth(this);
-        playerHeight = playerImage.getHeight(this);
-        playerWidth = Math.min(playerWidth, areaWidth);
-        playerHeight = Math.min(playerHeight, areaHeight);
-        playerX = random.nextInt(Math.max(1, areaWidth - playerWidth)) + areaX;
-        playerY = random.nextInt(Math.max(1, areaHeight - playerHeight)) + areaY;
-        playerVisible = true;
+        Simulation created = null;
+        if (autosave) {
+            try {
+                created = SessionJournal.recover(SessionJournal.defaultBase(), updatesPerSecond);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Could not recover the previous session: " + e);
+            }
+        }
+        if (created == null) {
+            created = seed != null ? new Simulation(seed, updatesPerSecond)
+                    : new Simulation(System.nanoTime(), updatesPerSecond, false);
+            created.startDemo(); // Start with the menu shown over an easy round
+        }
 
-        scale = 0.7;
-        playerWidth = (int) (playerWidth * scale);
-        playerHeight = (int) (playerHeight * scale);
+        if (recordFile != null) {
+            try {
+                recorder = new InputRecorder(Path.of(recordFile), seed, updatesPerSecond);
+                created.addInputListener(recorder);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (autosave) {
+            try {
+                journal = new SessionJournal(SessionJournal.defaultBase(), created);
+                created.addInputListener(journal);
+            } catch (IOException e) {
+                System.err.println("Autosave disabled: " + e);
+            }
+        }
+        return created;
     }
 
-    private void gameLoop() {
-        while (true) {
-            updateGameState();
-            repaint();
+    // Runs at exit. Once the game loop has stopped, this thread has the simulation to itself.
+    private void shutdown() {
+        gameLoop.stop();
+        if (recorder != null) {
             try {
-                Thread.sleep(16); // Aim for 60 FPS
-            } catch (InterruptedException e) {
+                recorder.finish(simulation.getTick(), simulation.getPoints());
+            } catch (IOException e) {
                 e.printStackTrace();
             }
         }
+        if (journal != null) {
+            journal.close();
+        }
+        submitLastRound();
+        writeFrameStats(); // Leave the frame timing behind for later analysis
+    }
+
+    // Runs the task on the game loop thread before its next step
+    private void runOnGameThread(Runnable task) {
+        gameTasks.add(task);
+    }
+
+    private void openLeaderboards() {
+        String name = System.getProperty("targetpractice.profile", System.getProperty("user.name", ""));
+        profile = name.isBlank() ? "Player" : Leaderboard.normalizeName(name);
+        roundPlayed = simulation.getPoints() != 0; // e.g. a recovered session
+        try {
+            easyBoard = new Leaderboard(Leaderboard.defaultPath("easy"));
+            hardBoard = new Leaderboard(Leaderboard.defaultPath("hard"));
+        } catch (IOException e) {
+            System.err.println("Leaderboard disabled: " + e);
+            easyBoard = hardBoard = null;
+        }
+    }
+
+    // Puts the round that is ending on its mode's leaderboard, if the player took part.
+    // Call on the game loop thread, before the simulation moves on.
+    private void submitRound() {
+        submitRound(profile);
+    }
+
+    private void submitRound(String player) {
+        if (!roundPlayed || easyBoard == null || replay != null) {
+            return;
+        }
+        roundPlayed = false;
+        Leaderboard board = simulation.getMode() instanceof HardMode ? hardBoard : easyBoard;
+        board.submitAsync(player, simulation.getPoints()).exceptionally(error -> {
+            System.err.println("Could not record the score: " + error);
+            return null;
+        });
+    }
+
+    // At exit there is no time for the I/O thread, so the last round is written directly
+    private void submitLastRound() {
+        if (!roundPlayed || easyBoard == null || replay != null) {
+            return;
+        }
+        roundPlayed = false;
+        try {
+            (simulation.getMode() instanceof HardMode ? hardBoard : easyBoard).submit(profile, simulation.getPoints());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
-    private void updateGameState() {
-        frames++;
-        long currentTime = System.currentTimeMillis();
-        if (currentTime - lastFpsTime >= 1000) {
-            fps = frames;
-            frames = 0;
-            lastFpsTime = currentTime;
+    private void writeFrameStats() {
+        Path file = Path.of(System.getProperty("targetpractice.stats", "frame-stats.csv"));
+        try {
+            gameLoop.getStats().writeReport(file);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
-    private void initializeTimers() {
-        movementTimer = new Timer(20, this);
-        movementTimer.start();
-        respawnTimer = new Timer(800, e -> respawnPlayer());
-        respawnTimer.start();
-        points = 0;
-        lastClickTime = System.currentTimeMillis();
-        lastFpsTime = System.currentTimeMillis();
-        startTime = System.currentTimeMillis();
+    // Package-private for tests, which stop the loop and then step and draw the game themselves
+    GameLoop getGameLoop() {
+        return gameLoop;
     }
 
+    Simulation getSimulation() {
+        return simulation;
+    }
+
+    // Only starts decoding; hard mode's images follow once the menu is up
+    private void loadImages() {
+        assets.loadImages(BACKGROUND_IMAGE, PLAYER_IMAGE);
+    }
+
+    @Override
+    public void update(long gameTimeNanos) {
+        applyInput();
+        if (replay != null && !replay.apply(simulation) && !replayReported) {
+            replayReported = true;
+            System.out.println("Replay finished: recorded " + replay.getExpectedPoints()
+                    + " points, replayed " + simulation.getPoints());
+        }
+        simulation.step(); // The mode clock stands still behind the menu
+        lastStepNanos = System.nanoTime();
+        if (simulation.getMode() instanceof MatchMode match && match.getPoints() != simulation.getPoints()) {
+            // The server has resolved one of our clicks
+            playSoundEffect(match.getPoints() > simulation.getPoints() ? SoundEngine.CLICK_SOUND : SoundEngine.CLICK_PLAYER);
+            simulation.setPoints(match.getPoints());
+        }
+        if (journal != null && journal.isCheckpointDue()) {
+            journal.checkpoint();
+        }
+        simulation.captureStatus(status.back());
+        status.publish();
+    }
 
-    private void playSoundEffect(String resourcePath) {
-        new Thread(() -> {
-            try (InputStream soundStream = getClass().getResourceAsStream(resourcePath)) {
-                if (soundStream == null) {
-                    System.err.println("Sound file not found: " + resourcePath);
-                    return;
+    // Applies what the EDT sent since the last step: the input in the order it arrived,
+    // then the tasks
+    private void applyInput() {
+        for (int type = input.poll(); type != InputQueue.NONE; type = input.poll()) {
+            switch (type) {
+                case InputQueue.CLICK -> applyClick(input.getA(), input.getB(), input.getTime());
+                case InputQueue.TOGGLE_MENU -> simulation.toggleMenu();
+                case InputQueue.MENU -> {
+                    submitRound(); // every option that gets here starts a new round
+                    simulation.chooseMenuOption(input.getA());
                 }
-                // Wrap the InputStream in a BufferedInputStream
-                try (BufferedInputStream bufferedStream = new BufferedInputStream(soundStream)) {
-                    AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(bufferedStream);
-                    Clip clip = AudioSystem.getClip();
-                    clip.open(audioInputStream);
-                    clip.start();
+                default -> {
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
             }
-        }).start();
+        }
+        for (Runnable task = gameTasks.poll(); task != null; task = gameTasks.poll()) {
+            task.run();
+        }
+    }
+
+    private void applyClick(int x, int y, long pressed) {
+        GameMode mode = simulation.getMode();
+        long sinceStep = Math.max(0, Math.min(simulation.getStepNanos() - 1, pressed - lastStepNanos));
+        int viewFraction = (int) (sinceStep * Simulation.VIEW_FRACTIONS / simulation.getStepNanos());
+        if (mode instanceof MatchMode) {
+            click(mode, x, y, viewFraction); // the server scores it; no local stats or leaderboard
+            return;
+        }
+        roundPlayed = true;
+        long pressedModeTime = modeManager.getModeTime() + (pressed - lastStepNanos);
+        long reaction = mode != null ? pressedModeTime - mode.getRoundStartTime() : 0;
+        // The current mode decides what was hit and what it is worth, against what was on
+        // screen at the press
+        int scored = click(mode, x, y, viewFraction);
+        if (mode != null) {
+            reactionStats.record(mode, scored, reaction);
+        }
+        if (scored != GameMode.MISS) {
+            playSoundEffect(scored > 0 ? SoundEngine.CLICK_SOUND : SoundEngine.CLICK_PLAYER);
+        }
+    }
+
+    private int click(GameMode mode, int x, int y, int viewFraction) {
+        GameEvents.Click event = GameEvents.beginClick();
+        int scored = simulation.click(x, y, viewFraction);
+        if (event != null && event.shouldCommit()) {
+            event.mode = mode != null ? mode.getName() : null;
+            event.x = x;
+            event.y = y;
+            event.viewFraction = viewFraction;
+            event.hit = scored != GameMode.MISS;
+            event.points = event.hit ? scored : 0;
+            event.commit();
+        }
+        return scored;
+    }
+
+    @Override
+    public void failed(RuntimeException error) {
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                "The game stopped after an error:\n" + error, "Error", JOptionPane.ERROR_MESSAGE));
     }
 
+    @Override
+    public void render(double alpha) {
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0 || !isDisplayable()) {
+            return;
+        }
+        do {
+            VolatileImage buffer = validateBackBuffer(width, height);
+            drawChanges(alpha, width, height);
+
+            Graphics screen = getGraphics();
+            if (screen != null) {
+                for (int i = 0; i < dirtyRegion.size(); i++) {
+                    int x = dirtyRegion.getX(i), y = dirtyRegion.getY(i);
+                    int x2 = x + dirtyRegion.getWidth(i), y2 = y + dirtyRegion.getHeight(i);
+                    screen.drawImage(buffer, x, y, x2, y2, x, y, x2, y2, null);
+                }
+                screen.dispose();
+                if (!firstFrameShown) {
+                    firstFrameShown = true;
+                    reportFirstFrame();
+                }
+            }
+            Toolkit.getDefaultToolkit().sync();
+            if (backBuffer.contentsLost()) {
+                fullRepaint = true;
+            }
+        } while (backBuffer.contentsLost());
+        if (drawnMenu) {
+            assets.prefetchHardMode(); // hard mode may be picked next
+        }
+    }
+
+    // Brings the back graphics up to date with the view alpha of the way into the next
+    // step, redrawing only the regions that changed; returns how many there were
+    int drawChanges(double alpha, int width, int height) {
+        Graphics2D g = backGraphics;
+        simulation.setViewFraction(Math.min(Simulation.VIEW_FRACTIONS - 1, (int) (alpha * Simulation.VIEW_FRACTIONS)));
+        collectDamage(width, height);
+        for (int i = 0; i < dirtyRegion.size(); i++) {
+            g.setClip(dirtyRegion.getX(i), dirtyRegion.getY(i),
+                    dirtyRegion.getWidth(i), dirtyRegion.getHeight(i));
+            drawFrame(g);
+        }
+        pixelsRedrawn = dirtyRegion.getArea();
+        return dirtyRegion.size();
+    }
+
+    // -Dtargetpractice.exitAfterFirstFrame=true quits once it is shown, for timing launches
+    // or creating a class data sharing archive (see game.xml)
+    private void reportFirstFrame() {
+        long sinceMain = (System.nanoTime() - LAUNCH_NANOS) / 1_000_000;
+        String sinceStart = ProcessHandle.current().info().startInstant()
+                .map(start -> Duration.between(start, Instant.now()).toMillis() + " ms after JVM start, ")
+                .orElse("");
+        System.out.println("First frame " + sinceStart + sinceMain + " ms after main()");
+        if (Boolean.getBoolean("targetpractice.exitAfterFirstFrame")) {
+            gameLoop.stop(); // the loop ends after this frame, so the shutdown hook needn't wait for it
+            SwingUtilities.invokeLater(() -> System.exit(0));
+        }
+    }
+
+    private VolatileImage validateBackBuffer(int width, int height) {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        imageCache.setGraphicsConfiguration(gc);
+        int status = backBuffer == null ? VolatileImage.IMAGE_INCOMPATIBLE : backBuffer.validate(gc);
+        if (status == VolatileImage.IMAGE_INCOMPATIBLE
+                || backBuffer.getWidth() != width || backBuffer.getHeight() != height) {
+            if (backBuffer != null) {
+                backBuffer.flush();
+            }
+            backBuffer = gc.createCompatibleVolatileImage(width, height);
+            createBackGraphics();
+        } else if (status == VolatileImage.IMAGE_RESTORED) {
+            createBackGraphics();
+        }
+        return backBuffer;
+    }
+
+    private void createBackGraphics() {
+        if (backGraphics != null) {
+            backGraphics.dispose();
+        }
+        setBackGraphics(backBuffer.createGraphics());
+    }
+
+    // The graphics frames are drawn with; tests pass one onto an image of their own
+    void setBackGraphics(Graphics2D g) {
+        backGraphics = g;
+        hudMetrics = g.getFontMetrics(hudFont);
+        fullRepaint = true;
+    }
+
+    // Works out which parts of the screen differ from the previous frame
+    private void collectDamage(int width, int height) {
+        dirtyRegion.reset(width, height);
+        GameMode mode = modeManager.getCurrent();
+        if (fullRepaint || simulation.isMenuShown() != drawnMenu || mode != drawnMode || showOverlay != drawnOverlay) {
+            dirtyRegion.markFull();
+            fullRepaint = false;
+            drawnMenu = simulation.isMenuShown();
+            drawnMode = mode;
+            drawnOverlay = showOverlay;
+            if (!drawnOverlay) {
+                for (int line = OVERLAY_FIRST_LINE; line < HUD_LINES; line++) {
+                    hudText[line].clear();
+                }
+            }
+        }
+        if (drawnMenu || mode == null) {
+            return; // the menu is static once drawn
+        }
+        mode.collectDamage(dirtyRegion);
+
+        long elapsedNanos = modeManager.getModeTime() - mode.getRoundStartTime();
+        updateHudLine(0, hudScratch.clear().append("Points: ").append(simulation.getPoints()), -1, 30);
+        updateHudLine(1, hudScratch.clear().append("Click Timer: ").appendFixed((elapsedNanos + 50_000_000) / 100_000_000, 1)
+                .append(" s"), 10, 30);
+        updateHudLine(2, hudScratch.clear().append("FPS: ").append(gameLoop.getFps()), 10, 60);
+        if (drawnOverlay) {
+            FrameStats stats = gameLoop.getStats();
+            updateHudLine(3, hudScratch.clear().append("Redrawn: ").append(pixelsRedrawn).append(" px"), 10, 90);
+            updateHudLine(4, hudScratch.clear().append("Pending events: ")
+                    .append(modeManager.getScheduler().getPendingCount()), 10, 120);
+            updateHudLine(5, appendHistogram(hudScratch.clear(), "Update", stats.update), 10, 150);
+            updateHudLine(6, appendHistogram(hudScratch.clear(), "Render", stats.render), 10, 180);
+            updateHudLine(7, appendHistogram(hudScratch.clear(), "Click to frame", stats.inputLatency), 10, 210);
+            updateHudLine(8, hudScratch.clear().append("Dropped frames: ").append(stats.getDroppedFrames()), 10, 240);
+            updateHudLine(9, hudScratch.clear().append("Allocated: ").append(stats.getLastFrameAllocation())
+                    .append(" B/frame"), 10, 270);
+            updateHudLine(10, hudScratch.clear().append("Sprites: ").append(imageCache.getHits()).append(" hits, ")
+                    .append(imageCache.getMisses()).append(" misses, ").append(imageCache.getFootprintBytes() / 1024)
+                    .append(" KB"), 10, 300);
+            updateHudLine(11, hudScratch.clear().append("Sounds: ").append(soundEngine.getPlayedCount())
+                    .append(" played, ").append(soundEngine.getDroppedCount()).append(" dropped, ")
+                    .append(soundEngine.getStolenCount()).append(" stolen"), 10, 330);
+        }
+    }
+
+    // "label p50 x  p95 x  p99 x  max x ms", in milliseconds to two places
+    private static HudText appendHistogram(HudText text, String label, LatencyHistogram histogram) {
+        text.append(label);
+        text.append(" p50 ").appendFixed(toHundredthsOfMillis(histogram.getPercentile(50)), 2);
+        text.append("  p95 ").appendFixed(toHundredthsOfMillis(histogram.getPercentile(95)), 2);
+        text.append("  p99 ").appendFixed(toHundredthsOfMillis(histogram.getPercentile(99)), 2);
+        text.append("  max ").appendFixed(toHundredthsOfMillis(histogram.getMax()), 2);
+        return text.append(" ms");
+    }
+
+    private static long toHundredthsOfMillis(long nanos) {
+        return (nanos + 5_000) / 10_000;
+    }
+
+    // x < 0 centers the line horizontally
+    private void updateHudLine(int line, HudText text, int x, int baseline) {
+        if (text.contentEquals(hudText[line]) && !dirtyRegion.isFull()) {
+            return;
+        }
+        int base = line * 4;
+        dirtyRegion.add(hudBounds[base], hudBounds[base + 1], hudBounds[base + 2], hudBounds[base + 3]);
+        int textWidth = text.getWidth(hudMetrics);
+        hudText[line].set(text);
+        hudBounds[base] = x < 0 ? (getWidth() - textWidth) / 2 : x;
+        hudBounds[base + 1] = baseline - hudMetrics.getAscent();
+        hudBounds[base + 2] = textWidth;
+        hudBounds[base + 3] = hudMetrics.getAscent() + hudMetrics.getDescent();
+        dirtyRegion.add(hudBounds[base], hudBounds[base + 1], hudBounds[base + 2], hudBounds[base + 3]);
+    }
+
+    private void playSoundEffect(int effect) {
+        if (!isMuted) {
+            soundEngine.play(effect);
+        }
+    }
+
+    // Expose events only need the last frame; the game loop does all real drawing
     @Override
     protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        g.drawImage(backgroundImage, 0, 0, getWidth(), getHeight(), this);
+        if (backBuffer != null && !backBuffer.contentsLost()) {
+            g.drawImage(backBuffer, 0, 0, null);
+        }
+    }
+
+    private void drawFrame(Graphics g) {
+        if (backgroundSprite == null || backgroundSprite.getWidth() != getWidth()
+                || backgroundSprite.getHeight() != getHeight()) {
+            // Resized: pre-scale the background once for the new size
+            if (backgroundSprite != null) {
+                imageCache.evict(backgroundSprite);
+            }
+            backgroundSprite = imageCache.sprite(BACKGROUND_IMAGE, getWidth(), getHeight());
+        }
+        backgroundSprite.draw(g, 0, 0);
 
-        if (showMenu) {
+        if (drawnMenu) {
             drawMenu(g);
         } else {
-            // Draw player depending on the game mode
-            if (isHardMode && hardMode != null) {
-                hardMode.drawPlayers(g);
-            } else if (isEasyMode) {
-                // Logic for easy mode can go here
-                g.drawImage(playerImage, playerX, playerY, playerWidth, playerHeight, this);
-            } else if (playerVisible) {
-                g.drawImage(playerImage, playerX, playerY, playerWidth, playerHeight, this);
+            // Draw the players of the current game mode
+            GameMode mode = modeManager.getCurrent();
+            if (mode != null) {
+                mode.render(g);
             }
             // Display points and timer
             displayGameInfo(g);
         }
     }
 
+    // Draws the HUD text prepared by collectDamage
     private void displayGameInfo(Graphics g) {
         g.setColor(Color.WHITE);
-        g.setFont(new Font("Arial", Font.BOLD, 20));
-        String pointsText = "Points: " + points;
-        int pointsX = (getWidth() - g.getFontMetrics().stringWidth(pointsText)) / 2;
-        g.drawString(pointsText, pointsX, 30);
-        double elapsedTime = (System.currentTimeMillis() - startTime) / 1000.0;
-        String timerText = String.format("Click Timer: %.1f s", elapsedTime);
-        g.drawString(timerText, 10, 30);
-        g.drawString("FPS: " + fps, 10, 60);
+        g.setFont(hudFont);
+        int ascent = hudMetrics.getAscent();
+        for (int line = 0; line < HUD_LINES; line++) {
+            if (!hudText[line].isEmpty()) {
+                hudText[line].draw(g, hudBounds[line * 4], hudBounds[line * 4 + 1] + ascent);
+            }
+        }
     }
 
     private void drawMenu(Graphics g) {
-        g.setColor(new Color(0, 0, 0, 150)); // Semi-transparent background
+        g.setColor(MENU_SHADE);
         g.fillRect(0, 0, getWidth(), getHeight());
         g.setColor(Color.WHITE);
-        g.setFont(new Font("Arial", Font.BOLD, 40));
-
-        String[] menuOptions = {"Start New Game", "Load Game", "Save Game", "Help", "Start Hard Mode", "Start Easy Mode", "Exit"};
-        for (int i = 0; i < menuOptions.length; i++) {
-            int yPosition = getHeight() / 2 - 100 + i * 50;
-            g.drawString(menuOptions[i], getWidth() / 2 - 100, yPosition);
-            // Store the bounds for each option
-            menuBounds[i] = new Rectangle(getWidth() / 2 - 100, yPosition - 30, 200, 40); // Adjust height as necessary
+        g.setFont(menuFont);
+        Rectangle[] bounds = menuBounds;
+        for (int i = 0; i < MENU_OPTIONS.length; i++) {
+            g.drawString(MENU_OPTIONS[i], bounds[i].x, bounds[i].y + 30);
         }
     }
 
-
-    private void initializeMenuBounds() {
-        menuBounds = new Rectangle[7];
-    }
-
-    @Override
-    public void actionPerformed(ActionEvent e) {
-        frames++;
-        long currentTime = System.currentTimeMillis();
-        if (currentTime - lastFpsTime >= 1000) {
-            fps = frames;
-            frames = 0;
-            lastFpsTime = currentTime;
-        }
-        repaint();
-    }
-
-    private void respawnPlayer() {
-        playerVisible = false;
-        Timer delayTimer = new Timer(800, e -> {
-            playerX = random.nextInt(Math.max(1, areaWidth - playerWidth)) + areaX;
-            playerY = random.nextInt(Math.max(1, areaHeight - playerHeight)) + areaY;
-            playerVisible = true;
-            startTime = System.currentTimeMillis();
-            repaint();
-        });
-        delayTimer.setRepeats(false);
-        delayTimer.start();
+    // Centers the options in the panel; the bounds are also what clicks are tested against
+    private void layoutMenu() {
+        Rectangle[] bounds = new Rectangle[MENU_OPTIONS.length];
+        for (int i = 0; i < bounds.length; i++) {
+            int yPosition = getHeight() / 2 - 125 + i * 50;
+            bounds[i] = new Rectangle(getWidth() / 2 - 100, yPosition - 30, 200, 40); // Adjust height as necessary
+        }
+        menuBounds = bounds;
     }
 
+    // Clicks are taken on press: it is the moment the player reacted, and mouseClicked
+    // never fires if the mouse moved between press and release
     @Override
-    public void mouseClicked(MouseEvent e) {
-        if (showMenu) {
+    public void mousePressed(MouseEvent e) {
+        long pressed = System.nanoTime();
+        if (replay != null) {
+            return; // the log drives the game
+        }
+        if (status.latest().isMenuShown()) {
             // Check which menu option was clicked
-            for (int i = 0; i < menuBounds.length; i++) {
-                if (menuBounds[i].contains(e.getPoint())) {
+            Rectangle[] bounds = menuBounds;
+            for (int i = 0; i < bounds.length; i++) {
+                if (bounds[i].contains(e.getX(), e.getY())) {
                     handleMenuOption(i);
                     break; // Exit loop after handling the clicked option
                 }
             }
         } else {
-            // Check if the click is within any player boundaries in hard mode
-            if (isHardMode && hardMode != null) {
-                // Check if any player is clicked
-                if (hardMode.checkPlayerClick(e.getX(), e.getY())) {
-                    // Check if Player 1 is clicked
-                    if (e.getX() >= hardMode.player1X && e.getX() <= hardMode.player1X + hardMode.playerWidth &&
-                            e.getY() >= hardMode.player1Y && e.getY() <= hardMode.player1Y + hardMode.playerHeight) {
-                        points++; // Increase points for clicking Player 1
-                        playSoundEffect("/sounds/click_sound.wav");
-                    }
-                    // Check if Player 2 is clicked
-                    else if (e.getX() >= hardMode.player2X && e.getX() <= hardMode.player2X + hardMode.playerWidth &&
-                            e.getY() >= hardMode.player2Y && e.getY() <= hardMode.player2Y + hardMode.playerHeight) {
-                        points--; // Decrease points for clicking Player 2
-                        playSoundEffect("/sounds/click_player.wav");
-                    }
-                    // Check if Player 3 is clicked
-                    else if (e.getX() >= hardMode.player3X && e.getX() <= hardMode.player3X + hardMode.playerWidth &&
-                            e.getY() >= hardMode.player3Y && e.getY() <= hardMode.player3Y + hardMode.playerHeight) {
-                        points--; // Decrease points for clicking Player 3
-                        playSoundEffect("/sounds/click_player.wav");
-                    }
-
-                    hardMode.respawnPlayers(); // Respawn players after a click
-                }
-            } else {
-                // Logic for easy mode can go here
-                if (playerVisible && e.getX() >= playerX && e.getX() <= playerX + playerWidth &&
-                        e.getY() >= playerY && e.getY() <= playerY + playerHeight) {
-                    points++; // Increase points for clicking in easy mode
-                   playSoundEffect("/sounds/click_sound.wav");
-                    respawnPlayer(); // Respawn the player in easy mode
-                }
-            }
-            repaint(); // Update the display
+            gameLoop.getStats().markInput(pressed);
+            input.offer(InputQueue.CLICK, e.getX(), e.getY(), pressed); // scored on the next step
         }
     }
 
@@ -281,11 +651,7 @@ public class TargetPractice extends JPanel implements MouseListener, ActionListe
     private void handleMenuOption(int optionIndex) {
         switch (optionIndex) {
             case 0: // Start New Game
-                // Reset points and visibility for a new game
-                points = 0;
-                isHardMode = false;
-                isEasyMode = false; // Reset easy mode
-                showMenu = false;
+                startGame();
                 break;
             case 1:
                 loadGame(); // Load Game
@@ -297,19 +663,15 @@ public class TargetPractice extends JPanel implements MouseListener, ActionListe
                 showInstructions(); // Help
                 break;
             case 4: // Start Hard Mode
-                isHardMode = true;
-                hardMode = new HardMode(areaX,areaY,areaWidth,areaHeight); // Initialize hard mode
-                points = 0; // Reset points for hard mode
-                showMenu = false;
+                startHardMode();
                 break;
             case 5: // Start Easy Mode
-                // Reset points and visibility for a new game
-                points = 0;
-                isHardMode = false;
-                isEasyMode = false; // Reset easy mode
-                showMenu = false;
+                startGame();
+                break;
+            case 6:
+                showLeaderboard(); // Leaderboard
                 break;
-            case 6: // Exit
+            case 7: // Exit
                 System.exit(0);
                 break;
             default:
@@ -317,7 +679,7 @@ public class TargetPractice extends JPanel implements MouseListener, ActionListe
         }
     }
 
-    @Override public void mousePressed(MouseEvent e) {}
+    @Override public void mouseClicked(MouseEvent e) {}
     @Override public void mouseReleased(MouseEvent e) {}
     @Override public void mouseEntered(MouseEvent e) {}
     @Override public void mouseExited(MouseEvent e) {}
@@ -339,6 +701,13 @@ public class TargetPractice extends JPanel implements MouseListener, ActionListe
         gameMenu.add(exitItem);
         menuBar.add(gameMenu);
 
+        // Stats menu
+        JMenu statsMenu = new JMenu("Stats");
+        JMenuItem reactionItem = new JMenuItem("Reaction Times");
+        reactionItem.addActionListener(e -> showReactionTimes());
+        statsMenu.add(reactionItem);
+        menuBar.add(statsMenu);
+
         // Help menu
         JMenu helpMenu = new JMenu("Help");
         JMenuItem instructionsItem = new JMenuItem("Instructions");
@@ -350,57 +719,152 @@ public class TargetPractice extends JPanel implements MouseListener, ActionListe
     }
 
     private void startGame() {
-        points = 0;
-        initializePlayer();
-        showMenu = false; // Hide menu to start the game
-        repaint();
+        chooseMenuOption(Simulation.MENU_NEW_GAME); // Also hides the menu
     }
 
+    // Applies a menu choice to the simulation
+    private void chooseMenuOption(int option) {
+        if (replay != null) {
+            return;
+        }
+        input.offer(InputQueue.MENU, option, 0, 0);
+    }
+
+    // The file is read off the EDT and the state applied on the game loop; the EDT reports how it went
     private void loadGame() {
-        // Get the path to the user's Documents folder
-        String userHome = System.getProperty("user.home");
-        String filePath = userHome + File.separator + "Documents" + File.separator + "game_state.dat";
-
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filePath))) {
-            GameState gameState = (GameState) ois.readObject();
-            points = gameState.getPoints();
-            playerX = gameState.getPlayerX();
-            playerY = gameState.getPlayerY();
-
-            // Restore game mode
-            String gameMode = gameState.getGameMode();
-
-            if (gameMode.equals("hard")) {
-                isHardMode = true;
-                hardMode = new HardMode(areaX, areaY, areaWidth, areaHeight); // Initialize hard mode
+        GameEvents.Load event = GameEvents.beginLoad();
+        SaveFile.readAsync(SaveFile.defaultPath()).whenComplete((state, error) -> {
+            if (error != null) {
+                if (event != null) {
+                    event.commit();
+                }
+                SwingUtilities.invokeLater(() -> reportLoad(error));
             } else {
-                isEasyMode = true;
+                runOnGameThread(() -> finishLoad(state, event));
             }
+        });
+    }
 
-            // Resume game
-            showMenu = false;
-            JOptionPane.showMessageDialog(this, "Game loaded successfully.");
-        } catch (IOException | ClassNotFoundException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error loading game.");
+    // event is null when no recording wants it
+    private void finishLoad(ByteBuffer state, GameEvents.Load event) {
+        boolean loaded = false;
+        try {
+            submitRound();
+            simulation.loadState(state); // Also resumes the game
+            loaded = true;
+            SwingUtilities.invokeLater(() -> reportLoad(null));
+        } catch (IllegalArgumentException e) {
+            SwingUtilities.invokeLater(() -> reportLoad(e));
+        }
+        if (event != null) {
+            event.bytes = state.remaining();
+            event.succeeded = loaded;
+            event.commit();
         }
     }
 
+    private void reportLoad(Throwable error) {
+        if (error == null) {
+            JOptionPane.showMessageDialog(this, "Game loaded successfully.");
+            return;
+        }
+        error.printStackTrace();
+        JOptionPane.showMessageDialog(this, "Error loading game.");
+    }
 
     private void startHardMode() {
-        isHardMode = true;
-        hardMode = new HardMode(areaX, areaY, areaWidth, areaHeight); // Initialize hard mode
-        points = 0;
-        showMenu = false; // Hide menu to start the game
-        repaint();
+        chooseMenuOption(Simulation.MENU_HARD_MODE);
     }
 
 
     private void restartGame() {
-        points = 0;
-        initializePlayer();
-        showMenu = true; // Show menu again
-        repaint();
+        chooseMenuOption(Simulation.MENU_RESTART); // Shows the menu again
+    }
+
+    // Top ten of each mode and where the current player stands
+    private void showLeaderboard() {
+        if (easyBoard == null) {
+            JOptionPane.showMessageDialog(this, "The leaderboard is not available.");
+            return;
+        }
+        StringBuilder text = new StringBuilder("Player: ").append(profile).append('\n');
+        try {
+            appendBoard(text, "Easy Mode", easyBoard);
+            appendBoard(text, "Hard Mode", hardBoard);
+        } catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Error reading the leaderboard.");
+            return;
+        }
+        JTextArea area = new JTextArea(text.toString());
+        area.setEditable(false);
+        area.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 14));
+        String[] options = {"Close", "Change Player"};
+        int choice = JOptionPane.showOptionDialog(this, area, "Leaderboard", JOptionPane.DEFAULT_OPTION,
+                JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+        if (choice == 1) {
+            String name = JOptionPane.showInputDialog(this, "Player name:", profile);
+            if (name != null && !name.isBlank()) {
+                String previous = profile;
+                profile = Leaderboard.normalizeName(name);
+                runOnGameThread(() -> submitRound(previous)); // the round so far belongs to the previous player
+                showLeaderboard();
+            }
+        }
+    }
+
+    private void appendBoard(StringBuilder text, String title, Leaderboard board) throws IOException {
+        text.append('\n').append(title).append('\n');
+        int place = 1;
+        for (Leaderboard.Entry entry : board.top(10)) {
+            text.append(String.format("%3d. %-24s %7d%n", place++, entry.name(), entry.score()));
+        }
+        int best = board.getBest(profile);
+        if (best == Leaderboard.NO_SCORE) {
+            text.append("Your best: none yet\n");
+        } else {
+            text.append("Your best: ").append(best).append(", rank ").append(board.getRank(profile))
+                    .append(" of ").append(board.getProfileCount()).append('\n');
+        }
+    }
+
+    // Reaction time percentiles for the session, with an option to export them. The game
+    // loop records them, so it takes the copy the dialog shows.
+    private void showReactionTimes() {
+        runOnGameThread(() -> {
+            ReactionStats snapshot = reactionStats.snapshot();
+            SwingUtilities.invokeLater(() -> showReactionTimes(snapshot));
+        });
+    }
+
+    private void showReactionTimes(ReactionStats stats) {
+        StringBuilder text = new StringBuilder(String.format("%-8s %6s %8s %8s %8s %8s%n",
+                "Target", "Hits", "p10 ms", "p50 ms", "p90 ms", "p99 ms"));
+        for (int i = 0; i < ReactionStats.CATEGORIES; i++) {
+            LatencyHistogram histogram = stats.get(i);
+            text.append(String.format("%-8s %6d %8.0f %8.0f %8.0f %8.0f%n", ReactionStats.getLabel(i),
+                    histogram.getCount(), histogram.getPercentile(10) / 1e6, histogram.getPercentile(50) / 1e6,
+                    histogram.getPercentile(90) / 1e6, histogram.getPercentile(99) / 1e6));
+        }
+        text.append(String.format("%nMisses: %d easy, %d hard", stats.getEasyMisses(), stats.getHardMisses()));
+        JTextArea area = new JTextArea(text.toString());
+        area.setEditable(false);
+        area.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 14));
+        String[] options = {"Close", "Export CSV"};
+        int choice = JOptionPane.showOptionDialog(this, area, "Reaction Times", JOptionPane.DEFAULT_OPTION,
+                JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+        if (choice == 1) {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setSelectedFile(new File("reaction-times.csv"));
+            if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+                try {
+                    stats.writeCsv(chooser.getSelectedFile().toPath());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    JOptionPane.showMessageDialog(this, "Error exporting reaction times.");
+                }
+            }
+        }
     }
 
     private void showInstructions() {
@@ -409,24 +873,58 @@ public class TargetPractice extends JPanel implements MouseListener, ActionListe
                 + "Good luck!", "Instructions", JOptionPane.INFORMATION_MESSAGE);
     }
 
+    // Snapshots the session on the game loop between steps, then writes it on the save thread
     private void saveGame() {
-        GameState gameState = new GameState(points, playerX, playerY, isHardMode ? "hard" : "easy");
-
-        // Get the path to the user's Documents folder
-        String userHome = System.getProperty("user.home");
-        String filePath = userHome + File.separator + "Documents" + File.separator + "game_state.dat";
-
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filePath))) {
-            oos.writeObject(gameState);
-            JOptionPane.showMessageDialog(this, "Game saved successfully.");
-        } catch (IOException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error saving game.");
-        }
+        runOnGameThread(() -> {
+            GameEvents.Save event = GameEvents.beginSave();
+            ByteBuffer state;
+            try {
+                state = simulation.saveState();
+            } catch (IllegalStateException e) {
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, e.getMessage() + "."));
+                return;
+            } catch (RuntimeException e) {
+                // A broken snapshot must not take the game loop down with it
+                e.printStackTrace();
+                if (event != null) {
+                    event.succeeded = false;
+                    event.commit();
+                }
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, "Error saving game."));
+                return;
+            }
+            int size = state.remaining(); // the state itself, as for loads
+            SaveFile.writeAsync(SaveFile.defaultPath(), state)
+                    .whenComplete((bytes, error) -> {
+                        if (event != null) {
+                            event.bytes = size;
+                            event.succeeded = error == null;
+                            event.commit();
+                        }
+                    })
+                    .whenComplete((bytes, error) -> SwingUtilities.invokeLater(() -> {
+                        if (error == null) {
+                            JOptionPane.showMessageDialog(this, "Game saved successfully.");
+                        } else {
+                            error.printStackTrace();
+                            JOptionPane.showMessageDialog(this, "Error saving game.");
+                        }
+                    }));
+        });
     }
 
-
     public static void main(String[] args) {
+        // -Dtargetpractice.jfr=<file> records the session with the flight recorder, from launch
+        String recordingFile = System.getProperty("targetpractice.jfr");
+        if (recordingFile != null) {
+            try {
+                GameEvents.startRecording(Path.of(recordingFile));
+            } catch (IOException | ParseException e) {
+                System.err.println("Could not start the flight recording: " + e);
+            }
+        }
+        // The game loop draws straight to the panel, which would paint over lightweight popups
+        JPopupMenu.setDefaultLightWeightPopupEnabled(false);
         JFrame frame = new JFrame("Target Practice");
         TargetPractice targetPractice = new TargetPractice();
         frame.add(targetPractice);
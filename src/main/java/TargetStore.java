@@ -0,0 +1,102 @@
+import java.util.Arrays;
+
+// Struct-of-arrays storage for moving targets. Index order is draw order, so a
+// higher index is drawn on top. Hot loops read the arrays directly.
+public class TargetStore {
+    public static final byte FRIEND = 0; // clicking it scores a point
+    public static final byte FOE = 1;    // clicking it costs a point
+
+    public static final int STEP_SIZE = 10;        // pixels a target slides per axis each movement step
+    public static final int ARRIVAL_TOLERANCE = 5; // this close on both axes counts as at the destination
+
+    private static final int[] TYPE_POINTS = {1, -1};
+
+    int count;
+    int[] x;
+    int[] y;
+    int[] previousX; // where the target was before the last move, for drawing in between
+    int[] previousY;
+    int[] targetX;
+    int[] targetY;
+    byte[] type;
+    long[] cooldownUntil; // game time (ns) before which the target ignores clicks
+    int[] image;
+
+    public TargetStore(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        x = new int[capacity];
+        y = new int[capacity];
+        previousX = new int[capacity];
+        previousY = new int[capacity];
+        targetX = new int[capacity];
+        targetY = new int[capacity];
+        type = new byte[capacity];
+        cooldownUntil = new long[capacity];
+        image = new int[capacity];
+    }
+
+    public int add(byte targetType, int imageIndex) {
+        if (count == x.length) {
+            grow(count * 2);
+        }
+        int i = count++;
+        x[i] = 0;
+        y[i] = 0;
+        previousX[i] = 0;
+        previousY[i] = 0;
+        targetX[i] = 0;
+        targetY[i] = 0;
+        type[i] = targetType;
+        cooldownUntil[i] = 0;
+        image[i] = imageIndex;
+        return i;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    private void grow(int capacity) {
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        previousX = Arrays.copyOf(previousX, capacity);
+        previousY = Arrays.copyOf(previousY, capacity);
+        targetX = Arrays.copyOf(targetX, capacity);
+        targetY = Arrays.copyOf(targetY, capacity);
+        type = Arrays.copyOf(type, capacity);
+        cooldownUntil = Arrays.copyOf(cooldownUntil, capacity);
+        image = Arrays.copyOf(image, capacity);
+    }
+
+    // Slides target i one step toward its destination and returns whether it has arrived.
+    // Every mode that walks targets moves them with this, so they all move alike.
+    public boolean step(int i) {
+        x[i] += clampStep(targetX[i] - x[i]);
+        y[i] += clampStep(targetY[i] - y[i]);
+        return Math.abs(x[i] - targetX[i]) <= ARRIVAL_TOLERANCE && Math.abs(y[i] - targetY[i]) <= ARRIVAL_TOLERANCE;
+    }
+
+    private static int clampStep(int delta) {
+        return Math.max(-STEP_SIZE, Math.min(STEP_SIZE, delta));
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getX(int i) {
+        return x[i];
+    }
+
+    public int getY(int i) {
+        return y[i];
+    }
+
+    public byte getType(int i) {
+        return type[i];
+    }
+
+    public int getPoints(int i) {
+        return TYPE_POINTS[type[i]];
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Hands the latest version of some state from one writer thread to one reader thread
+// without locks or allocation. There are three instances: the writer fills its back
+// one and publishes it by swapping it with the middle one in a single atomic step, and
+// the reader, when a fresh one is waiting, swaps the middle one with its front one.
+// Each instance belongs to exactly one side at any moment, so the reader never sees
+// one half-written and neither side ever waits for the other.
+public class TripleBuffer<T> {
+    private static final int INDEX = 3;
+    private static final int FRESH = 4; // the middle instance hasn't been taken by the reader yet
+
+    private final T[] buffers;
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;  // the writer's
+    private int front = 2; // the reader's
+
+    @SuppressWarnings("unchecked")
+    public TripleBuffer(Supplier<T> factory) {
+        buffers = (T[]) new Object[] {factory.get(), factory.get(), factory.get()};
+    }
+
+    // Writer side: the instance to fill in. It holds whatever was published two rounds
+    // ago, so every field must be written before publish().
+    public T back() {
+        return buffers[back];
+    }
+
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX;
+    }
+
+    // Reader side: the most recently published instance. It stays untouched by the
+    // writer until the reader calls latest() again.
+    public T latest() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX;
+        }
+        return buffers[front];
+    }
+}
@@ -0,0 +1,98 @@
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrameAllocationTest {
+    private static final int WIDTH = 1200, HEIGHT = 700;
+    private static final int WARMUP_FRAMES = 10_000; // enough for the JIT to compile the frame path
+    // Java2D's clipping only settles into its final compiled form after many calls, so
+    // warm-up also goes on until this many rectangles have been redrawn
+    private static final int WARMUP_RECTANGLES = 20_000;
+    private static final int MAX_WARMUP_FRAMES = 200_000; // in case nothing moves
+    private static final int FRAMES = 5_000;
+    private static final int WINDOWS = 3;
+
+    // Allowed per frame on top of Java2D's clipping. Replenishing the spawn pool allocates
+    // a new one every few hundred steps, which comes to well under a byte a frame; garbage
+    // from the frame itself would be tens of bytes or more.
+    private static final long MAX_BYTES_PER_FRAME = 4;
+
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @BeforeAll
+    static void keepFilesInTarget() {
+        // Written again by the panel's shutdown hook when the test JVM exits
+        Path files = Path.of("target", "frame-allocation-test");
+        System.setProperty("targetpractice.autosave", "false");
+        System.setProperty("targetpractice.seed", "42");
+        System.setProperty("targetpractice.leaderboard", files.resolve("leaderboard").toString());
+        System.setProperty("targetpractice.stats", files.resolve("frame-stats.csv").toString());
+    }
+
+    // A frame in the steady state of a hard round, stepping and drawing the way the game
+    // loop does, must not allocate, or the garbage turns into GC hitches
+    @Test
+    void steadyHardModeFramesAllocateNothing() {
+        TargetPractice panel = new TargetPractice();
+        panel.getGameLoop().stop(); // from here this thread owns the simulation
+        panel.setSize(WIDTH, HEIGHT);
+        Simulation simulation = panel.getSimulation();
+        simulation.chooseMenuOption(Simulation.MENU_HARD_MODE);
+        Graphics2D g = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB).createGraphics();
+        panel.setBackGraphics(g);
+
+        int frame = 0;
+        long redrawn = 0;
+        while (frame < WARMUP_FRAMES || redrawn < WARMUP_RECTANGLES && frame < MAX_WARMUP_FRAMES) {
+            redrawn += drawFrame(panel, simulation, frame++);
+        }
+        // A late recompile or a pool refill can land in any one window, so the
+        // quietest of a few is what the frame itself costs
+        long clip = bytesPerClip(g);
+        long perFrame = Long.MAX_VALUE;
+        for (int window = 0; window < WINDOWS && perFrame > MAX_BYTES_PER_FRAME; window++) {
+            long rectangles = 0;
+            long before = THREADS.getCurrentThreadAllocatedBytes();
+            for (int end = frame + FRAMES; frame < end; frame++) {
+                rectangles += drawFrame(panel, simulation, frame);
+            }
+            long allocated = THREADS.getCurrentThreadAllocatedBytes() - before;
+            assertTrue(rectangles > FRAMES, "targets moved on screen");
+            perFrame = Math.min(perFrame, (allocated - rectangles * clip) / FRAMES);
+        }
+
+        assertTrue(simulation.getMode() instanceof HardMode, "still in hard mode");
+        assertTrue(perFrame <= MAX_BYTES_PER_FRAME, perFrame + " bytes allocated per frame");
+        g.dispose();
+    }
+
+    // One step and one frame a quarter of a step on each time round, as at 240 fps.
+    // Returns the rectangles redrawn.
+    private static int drawFrame(TargetPractice panel, Simulation simulation, int frame) {
+        if (frame % 4 == 0) {
+            panel.update((simulation.getTick() + 1) * simulation.getStepNanos());
+        }
+        return panel.drawChanges((frame % 4) / 4.0, WIDTH, HEIGHT);
+    }
+
+    // Java2D copies the clip rectangle and builds a new clip region for it, which the
+    // game can't avoid short of not clipping; measured here rather than assumed
+    private static long bytesPerClip(Graphics2D g) {
+        int calls = 100_000;
+        for (int i = 0; i < calls; i++) {
+            g.setClip(i % 800, 100, 200, 200);
+        }
+        long before = THREADS.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < calls; i++) {
+            g.setClip(i % 800, 100, 200, 200);
+        }
+        return (THREADS.getCurrentThreadAllocatedBytes() - before) / calls;
+    }
+}
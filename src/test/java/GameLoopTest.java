@@ -0,0 +1,82 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GameLoopTest {
+    private static final int RATE = 1000; // steps and frames per second, so a second of failures is quick
+
+    // One broken step is dropped and the loop goes on stepping and drawing
+    @Test
+    void loopCarriesOnAfterOneFailedStep() throws Exception {
+        AtomicInteger updates = new AtomicInteger();
+        CompletableFuture<Integer> renderedAfter = new CompletableFuture<>();
+        CompletableFuture<RuntimeException> failed = new CompletableFuture<>();
+        GameLoop loop = new GameLoop(new GameLoop.Game() {
+            @Override
+            public void update(long gameTimeNanos) {
+                if (updates.incrementAndGet() == 3) {
+                    throw new IllegalStateException("broken step");
+                }
+            }
+
+            @Override
+            public void render(double alpha) {
+                if (updates.get() >= 10) {
+                    renderedAfter.complete(updates.get());
+                }
+            }
+
+            @Override
+            public void failed(RuntimeException error) {
+                failed.complete(error);
+            }
+        }, RATE, RATE);
+        loop.start();
+        try {
+            renderedAfter.get(10, TimeUnit.SECONDS);
+        } finally {
+            loop.stop();
+        }
+        assertFalse(failed.isDone());
+    }
+
+    // A step that fails every time stops the loop and tells the game why
+    @Test
+    void loopStopsWhenEveryStepFails() throws Exception {
+        IllegalStateException broken = new IllegalStateException("broken step");
+        AtomicInteger updates = new AtomicInteger();
+        CompletableFuture<RuntimeException> failed = new CompletableFuture<>();
+        GameLoop loop = new GameLoop(new GameLoop.Game() {
+            @Override
+            public void update(long gameTimeNanos) {
+                updates.incrementAndGet();
+                throw broken;
+            }
+
+            @Override
+            public void render(double alpha) {
+            }
+
+            @Override
+            public void failed(RuntimeException error) {
+                failed.complete(error);
+            }
+        }, RATE, RATE);
+        loop.start();
+        try {
+            assertEquals(broken, failed.get(10, TimeUnit.SECONDS));
+            int stoppedAt = updates.get();
+            assertTrue(stoppedAt >= RATE, "failed after " + stoppedAt + " steps");
+            Thread.sleep(100);
+            assertEquals(stoppedAt, updates.get(), "no steps once stopped");
+        } finally {
+            loop.stop();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InputQueueTest {
+    private static final long EVENTS = 5_000_000L;
+
+    // One thread offers numbered events as fast as it can while another polls them;
+    // none may be lost, repeated, reordered or torn
+    @Test
+    void deliversEveryEventInOrderAcrossThreads() throws InterruptedException {
+        InputQueue queue = new InputQueue();
+        Thread producer = new Thread(() -> {
+            for (long sequence = 1; sequence <= EVENTS; ) {
+                if (queue.offer(InputQueue.CLICK, (int) sequence, ~(int) sequence, sequence)) {
+                    sequence++;
+                } else {
+                    Thread.yield(); // full: the consumer is a whole ring behind
+                }
+            }
+        }, "stress-producer");
+        producer.start();
+
+        long expected = 1, errors = 0;
+        while (expected <= EVENTS) {
+            int type = queue.poll();
+            if (type == InputQueue.NONE) {
+                Thread.yield();
+                continue;
+            }
+            long sequence = queue.getTime();
+            if (type != InputQueue.CLICK || sequence != expected
+                    || queue.getA() != (int) sequence || queue.getB() != ~(int) sequence) {
+                errors++;
+            }
+            expected = sequence + 1;
+        }
+        producer.join();
+        assertEquals(0, errors);
+        assertEquals(InputQueue.NONE, queue.poll());
+    }
+
+    @Test
+    void dropsEventsOnceTheRingIsFull() {
+        InputQueue queue = new InputQueue();
+        int accepted = 0;
+        while (queue.offer(InputQueue.MENU, accepted, 0, 0)) {
+            accepted++;
+        }
+        assertEquals(1, queue.getDroppedCount());
+        for (int i = 0; i < accepted; i++) {
+            assertEquals(InputQueue.MENU, queue.poll());
+            assertEquals(i, queue.getA());
+        }
+        assertEquals(InputQueue.NONE, queue.poll());
+    }
+}
@@ -0,0 +1,122 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MatchServerTest {
+    private static final long TIMEOUT_NANOS = 5_000_000_000L;
+
+    private MatchServer server;
+    private Thread serverThread;
+
+    @AfterEach
+    void stopServer() throws InterruptedException {
+        if (server != null) {
+            server.stop();
+            serverThread.join();
+        }
+    }
+
+    private void startServer(int friends, int foes) throws IOException {
+        server = new MatchServer(0, friends, foes, 42L);
+        serverThread = new Thread(server, "match-server");
+        serverThread.start();
+    }
+
+    private MatchClient connect() throws IOException {
+        return MatchClient.connect(new InetSocketAddress("localhost", server.getPort()));
+    }
+
+    // Every full update, the welcome's and each respawn's, must fit the server's frame
+    @Test
+    void largeFieldReachesEveryClientThroughRespawns() throws Exception {
+        startServer(10, 30);
+        try (MatchClient shooter = connect(); MatchClient watcher = connect()) {
+            long deadline = System.nanoTime() + TIMEOUT_NANOS;
+            while (!(shooter.isJoined() && watcher.isJoined())) {
+                pollBoth(shooter, watcher, deadline);
+            }
+            assertEquals(40, shooter.getTargetCount());
+            assertEquals(40, watcher.getTargetCount());
+
+            // Shoot the middle of a target until the field respawns a few times
+            long joinedRounds = watcher.getRounds();
+            while (watcher.getRounds() < joinedRounds + 3) {
+                int fraction = Simulation.VIEW_FRACTIONS - 1;
+                shooter.click(fraction, shooter.getViewX(0, fraction) + shooter.getTargetWidth() / 2,
+                        shooter.getViewY(0, fraction) + shooter.getTargetHeight() / 2);
+                pollBoth(shooter, watcher, deadline);
+            }
+
+            long tick = watcher.getTick();
+            while (watcher.getTick() < tick + 10) {
+                pollBoth(shooter, watcher, deadline);
+            }
+            assertTrue(serverThread.isAlive(), "server stopped");
+            assertTrue(shooter.getPoints() != 0, "the shooter's hits scored");
+            assertEquals(0, watcher.getPoints(), "the watcher never clicked");
+        }
+    }
+
+    // A client going away mid-match leaves the others playing
+    @Test
+    void serverOutlivesDisconnectingClients() throws Exception {
+        startServer(10, 30);
+        try (MatchClient staying = connect()) {
+            for (int i = 0; i < 5; i++) {
+                MatchClient leaving = connect();
+                long deadline = System.nanoTime() + TIMEOUT_NANOS;
+                while (!leaving.isJoined()) {
+                    pollBoth(staying, leaving, deadline);
+                }
+                leaving.close();
+            }
+            long deadline = System.nanoTime() + TIMEOUT_NANOS;
+            long tick = staying.getTick();
+            while (staying.getTick() < tick + 10) {
+                pollBoth(staying, staying, deadline);
+            }
+            assertTrue(serverThread.isAlive(), "server stopped");
+        }
+    }
+
+    // The server doesn't pause with a player's menu, so a paused match still reads every
+    // tick; otherwise the server's outbox for it fills up and the player is dropped
+    @Test
+    void pausedMatchKeepsReadingTheServer() throws Exception {
+        startServer(10, 30);
+        ModeManager manager = new ModeManager();
+        MatchClient client = connect();
+        manager.switchTo(new MatchMode(client, 1_000_000_000L / MatchServer.TICK_RATE));
+        try {
+            long deadline = System.nanoTime() + TIMEOUT_NANOS;
+            long time = 0;
+            while (!client.isJoined()) {
+                assertTrue(System.nanoTime() - deadline < 0, "timed out");
+                manager.update(time++);
+                Thread.sleep(1);
+            }
+            manager.setPaused(true);
+            long tick = client.getTick();
+            while (client.getTick() < tick + 10) {
+                assertTrue(System.nanoTime() - deadline < 0, "paused match stopped reading");
+                manager.update(time++);
+                Thread.sleep(1);
+            }
+            client.poll(); // throws if the server has dropped the client
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    private static void pollBoth(MatchClient a, MatchClient b, long deadline) throws Exception {
+        assertTrue(System.nanoTime() - deadline < 0, "timed out");
+        a.poll(); // throws if the server has closed the connection
+        b.poll();
+        Thread.sleep(1);
+    }
+}
@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ModeManagerTest {
+    private static final int SESSIONS = 1_000;
+    private static final int STEPS_PER_SESSION = 30; // half a second: ten hard mode moves
+
+    // Starting session after session, the way the menu does, must leave nothing behind:
+    // the scheduler holds only the running mode's events and no threads pile up
+    @Test
+    void restartingSessionsLeaksNoTimersOrThreads() {
+        // Not deterministic, so hard mode refills its spawn points on the background thread too
+        Simulation simulation = new Simulation(42L, 60, false);
+        EventScheduler scheduler = simulation.getModeManager().getScheduler();
+
+        // One session of each first, so lazily started threads are already running
+        int hardPending = playSession(simulation, Simulation.MENU_HARD_MODE);
+        int easyPending = playSession(simulation, Simulation.MENU_EASY_MODE);
+        int threads = Thread.activeCount();
+
+        for (int session = 0; session < SESSIONS; session++) {
+            boolean hard = session % 2 == 0;
+            int pending = playSession(simulation, hard ? Simulation.MENU_HARD_MODE : Simulation.MENU_EASY_MODE);
+            assertEquals(hard ? hardPending : easyPending, pending, "events pending in session " + session);
+            assertEquals(threads, Thread.activeCount(), "threads in session " + session);
+        }
+
+        simulation.shutdown();
+        assertEquals(0, scheduler.getPendingCount(), "events pending after shutdown");
+        assertEquals(threads, Thread.activeCount(), "threads after shutdown");
+    }
+
+    // Every session on a new manager, as when the window is reopened
+    @Test
+    void shuttingDownManagersLeaksNoThreads() {
+        shutDownSession();
+        int threads = Thread.activeCount();
+        for (int session = 0; session < SESSIONS; session++) {
+            assertEquals(0, shutDownSession(), "events pending after session " + session);
+            assertEquals(threads, Thread.activeCount(), "threads after session " + session);
+        }
+    }
+
+    // Plays a few steps of the option's mode and returns how many events it has pending
+    private static int playSession(Simulation simulation, int option) {
+        simulation.chooseMenuOption(option);
+        for (int step = 0; step < STEPS_PER_SESSION; step++) {
+            simulation.step();
+        }
+        return simulation.getModeManager().getScheduler().getPendingCount();
+    }
+
+    private static int shutDownSession() {
+        Simulation simulation = new Simulation(42L, 60, false);
+        playSession(simulation, Simulation.MENU_HARD_MODE);
+        simulation.shutdown();
+        return simulation.getModeManager().getScheduler().getPendingCount();
+    }
+}
@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class TripleBufferTest {
+    private static final long STRESS_NANOS = 2_000_000_000L;
+
+    // A writer publishes simulation statuses as fast as it can while the reader checks
+    // that every status it sees is internally consistent
+    @Test
+    void readerNeverSeesTornStatus() throws InterruptedException {
+        assertEquals(0, tornReads(true, STRESS_NANOS));
+    }
+
+    // The same check against one status written in place, to show it catches tears
+    @Test
+    void checkCatchesStatusWrittenInPlace() throws InterruptedException {
+        assumeTrue(Runtime.getRuntime().availableProcessors() > 1, "needs the threads to run at once");
+        assertTrue(tornReads(false, STRESS_NANOS / 2) > 0);
+    }
+
+    private static long tornReads(boolean buffered, long nanos) throws InterruptedException {
+        Simulation simulation = new Simulation(1, 1000);
+        simulation.start(simulation.createHardMode());
+        long stepNanos = simulation.getStepNanos();
+        TripleBuffer<Simulation.Status> buffer = new TripleBuffer<>(Simulation.Status::new);
+        Simulation.Status shared = new Simulation.Status();
+        long deadline = System.nanoTime() + nanos;
+
+        Thread writer = new Thread(() -> {
+            while (System.nanoTime() < deadline) {
+                simulation.step();
+                simulation.setPoints((int) (simulation.getTick() * 7));
+                if (buffered) {
+                    simulation.captureStatus(buffer.back());
+                    buffer.publish();
+                } else {
+                    simulation.captureStatus(shared);
+                }
+            }
+        }, "stress-writer");
+        writer.start();
+
+        long torn = 0;
+        while (writer.isAlive()) {
+            Simulation.Status status = buffered ? buffer.latest() : shared;
+            long tick = status.getTick();
+            int points = status.getPoints();
+            long modeTime = status.getModeTime();
+            if (tick != 0 && (points != (int) (tick * 7) || modeTime != tick * stepNanos)) {
+                torn++;
+            }
+        }
+        writer.join();
+        simulation.shutdown();
+        return torn;
+    }
+}